@@ -0,0 +1,68 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio.apt;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a URI template to be checked by the {@link TemplateProcessor} at
+ * compile time.
+ *
+ * <p>
+ * On a <code>static final</code> String constant, such as:
+ * </p>
+ *
+ * <pre>
+ * &#064;Template
+ * static final String USER = &quot;http://www.foo.com/users/{id}&quot;;
+ * </pre>
+ *
+ * <p>
+ * the template is validated, and a precompiled
+ * {@link com.google.uritemplate.gregorio.URITemplate} with the same name is
+ * generated in a class named after the enclosing class, with
+ * <code>Templates</code> appended. (<code>UserLinksTemplates.USER</code>
+ * for the example above, if declared in <code>UserLinks</code>.)
+ * </p>
+ *
+ * <p>
+ * On an element of an annotation type, such as:
+ * </p>
+ *
+ * <pre>
+ * public &#064;interface Link {
+ *     &#064;Template
+ *     String value();
+ * }
+ * </pre>
+ *
+ * <p>
+ * every value passed to that element is validated wherever the annotation is
+ * used.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target( { ElementType.FIELD, ElementType.METHOD })
+public @interface Template {
+
+}
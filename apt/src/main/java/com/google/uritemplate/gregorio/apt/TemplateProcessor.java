@@ -0,0 +1,356 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio.apt;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import com.google.uritemplate.gregorio.URITemplateHandler;
+import com.google.uritemplate.gregorio.URITemplateParser;
+import com.google.uritemplate.gregorio.URITemplateParserException;
+
+/**
+ * An annotation processor checking the URI templates marked by
+ * {@link Template}. Templates that fail to parse are reported as compiler
+ * errors. For every class declaring {@link Template} String constants, a class
+ * holding the precompiled templates is generated. The generated code replays
+ * the parser events recorded at compile time into a
+ * {@link com.google.uritemplate.gregorio.URITemplateCompiler}, so the templates
+ * are never parsed at runtime.
+ *
+ * @author Wilfred Springer
+ *
+ */
+@SupportedAnnotationTypes("*")
+public class TemplateProcessor extends AbstractProcessor {
+
+    /** The suffix appended to the name of the class declaring the constants. */
+    private final static String SUFFIX = "Templates";
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        Map<TypeElement, List<VariableElement>> constants = new LinkedHashMap<TypeElement, List<VariableElement>>();
+        for (TypeElement annotation : annotations) {
+            if (annotation.getQualifiedName().contentEquals(
+                    Template.class.getName())) {
+                for (Element element : roundEnv
+                        .getElementsAnnotatedWith(annotation)) {
+                    if (element.getKind() == ElementKind.FIELD) {
+                        collectConstant((VariableElement) element, constants);
+                    }
+                }
+            } else if (annotation.getKind() == ElementKind.ANNOTATION_TYPE) {
+                checkAnnotationUsages(annotation, roundEnv);
+            }
+        }
+        for (Map.Entry<TypeElement, List<VariableElement>> entry : constants
+                .entrySet()) {
+            generate(entry.getKey(), entry.getValue());
+        }
+        return false;
+    }
+
+    /**
+     * Checks the {@link Template} constant passed in, adding it to the
+     * constants to be generated if it parses correctly.
+     *
+     * @param field
+     *            The field marked as {@link Template}.
+     * @param constants
+     *            The constants to be generated, indexed by declaring class.
+     */
+    private void collectConstant(VariableElement field,
+            Map<TypeElement, List<VariableElement>> constants) {
+        Object value = field.getConstantValue();
+        if (!(value instanceof String)
+                || !field.getModifiers().contains(Modifier.STATIC)) {
+            error("@Template requires a static final String constant.",
+                    field, null, null);
+            return;
+        }
+        if (check((String) value, new Recorder(), field, null, null)) {
+            TypeElement type = (TypeElement) field.getEnclosingElement();
+            List<VariableElement> fields = constants.get(type);
+            if (fields == null) {
+                fields = new ArrayList<VariableElement>();
+                constants.put(type, fields);
+            }
+            fields.add(field);
+        }
+    }
+
+    /**
+     * Checks all values passed to elements marked as {@link Template} of the
+     * annotation type passed in.
+     *
+     * @param annotation
+     *            The annotation type.
+     * @param roundEnv
+     *            The current round.
+     */
+    private void checkAnnotationUsages(TypeElement annotation,
+            RoundEnvironment roundEnv) {
+        List<ExecutableElement> members = new ArrayList<ExecutableElement>();
+        for (ExecutableElement member : ElementFilter.methodsIn(annotation
+                .getEnclosedElements())) {
+            if (member.getAnnotation(Template.class) != null) {
+                members.add(member);
+            }
+        }
+        if (members.isEmpty()) {
+            return;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+                if (!mirror.getAnnotationType().asElement().equals(annotation)) {
+                    continue;
+                }
+                Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv
+                        .getElementUtils().getElementValuesWithDefaults(mirror);
+                for (ExecutableElement member : members) {
+                    checkAnnotationValue(values.get(member), element, mirror);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks a single annotation value, which is either a String or an array
+     * of Strings.
+     */
+    private void checkAnnotationValue(AnnotationValue value, Element element,
+            AnnotationMirror mirror) {
+        if (value == null) {
+            return;
+        }
+        Object content = value.getValue();
+        if (content instanceof String) {
+            check((String) content, new Recorder(), element, mirror, value);
+        } else if (content instanceof List<?>) {
+            for (Object item : (List<?>) content) {
+                checkAnnotationValue((AnnotationValue) item, element, mirror);
+            }
+        }
+    }
+
+    /**
+     * Parses the URI template, reporting a compiler error if it fails.
+     *
+     * @return <code>true</code> if the URI template parsed correctly.
+     */
+    private boolean check(String uriTemplate, URITemplateHandler handler,
+            Element element, AnnotationMirror mirror, AnnotationValue value) {
+        try {
+            URITemplateParser.parse(uriTemplate, handler);
+            return true;
+        } catch (URITemplateParserException upe) {
+            error(upe.getMessage() + " (At position " + upe.getPosition()
+                    + " of \"" + uriTemplate + "\".)", element, mirror, value);
+        } catch (RuntimeException re) {
+            error("Malformed URI template \"" + uriTemplate + "\".", element,
+                    mirror, value);
+        }
+        return false;
+    }
+
+    /**
+     * Reports a compiler error.
+     */
+    private void error(String message, Element element,
+            AnnotationMirror mirror, AnnotationValue value) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element,
+                mirror, value);
+    }
+
+    /**
+     * Generates the class holding the precompiled templates for all constants
+     * passed in.
+     *
+     * @param type
+     *            The class declaring the constants.
+     * @param fields
+     *            The constants.
+     */
+    private void generate(TypeElement type, List<VariableElement> fields) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String name = type.getQualifiedName().toString();
+        if (!pkg.isUnnamed()) {
+            name = name.substring(pkg.getQualifiedName().length() + 1);
+        }
+        name = name.replace('.', '_') + SUFFIX;
+        String qualifiedName = pkg.isUnnamed() ? name : pkg.getQualifiedName()
+                + "." + name;
+        try {
+            PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                    .createSourceFile(qualifiedName,
+                            fields.toArray(new Element[fields.size()]))
+                    .openWriter());
+            try {
+                if (!pkg.isUnnamed()) {
+                    out.println("package " + pkg.getQualifiedName() + ";");
+                    out.println();
+                }
+                out.println("import com.google.uritemplate.gregorio.URITemplate;");
+                out.println("import com.google.uritemplate.gregorio.URITemplateCompiler;");
+                out.println();
+                out.println("/**");
+                out.println(" * Precompiled URI templates for the constants of {@link "
+                        + type.getQualifiedName() + "}.");
+                out.println(" * Generated by " + getClass().getName() + ".");
+                out.println(" */");
+                out.println("public final class " + name + " {");
+                for (VariableElement field : fields) {
+                    out.println();
+                    out.println("    /** Precompiled from {@link "
+                            + type.getQualifiedName() + "#"
+                            + field.getSimpleName() + "}. */");
+                    out.println("    public static final URITemplate "
+                            + field.getSimpleName() + ";");
+                }
+                out.println();
+                out.println("    static {");
+                out.println("        URITemplateCompiler compiler;");
+                for (VariableElement field : fields) {
+                    String uriTemplate = (String) field.getConstantValue();
+                    Recorder recorder = new Recorder();
+                    URITemplateParser.parse(uriTemplate, recorder);
+                    out.println("        compiler = new URITemplateCompiler("
+                            + literal(uriTemplate) + ");");
+                    for (String statement : recorder.statements) {
+                        out.println("        compiler." + statement + ";");
+                    }
+                    out.println("        " + field.getSimpleName()
+                            + " = compiler.getTemplate();");
+                }
+                out.println("    }");
+                out.println();
+                out.println("    private " + name + "() {");
+                out.println("    }");
+                out.println();
+                out.println("}");
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            error("Failed to generate " + qualifiedName + ": "
+                    + ioe.getMessage(), type, null, null);
+        }
+    }
+
+    /**
+     * Returns the Java source representation of the String passed in.
+     */
+    private String literal(String value) {
+        return value == null ? "null" : processingEnv.getElementUtils()
+                .getConstantExpression(value);
+    }
+
+    /**
+     * Returns the Java source representation of the String array passed in.
+     */
+    private String literal(String[] values) {
+        StringBuilder builder = new StringBuilder("new String[] { ");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(literal(values[i]));
+        }
+        return builder.append(" }").toString();
+    }
+
+    /**
+     * A {@link URITemplateHandler} recording all events as Java statements,
+     * to be replayed on the generated compiler.
+     */
+    private class Recorder implements URITemplateHandler {
+
+        /** The statements recorded so far. */
+        private final List<String> statements = new ArrayList<String>();
+
+        public void handleCharacters(String text) {
+            statements.add("handleCharacters(" + literal(text) + ")");
+        }
+
+        public void handleVar(String variable, String defaultValue) {
+            statements.add("handleVar(" + literal(variable) + ", "
+                    + literal(defaultValue) + ")");
+        }
+
+        public void handleOpt(String arg, String[] variables,
+                String[] defaultValues) {
+            statements.add("handleOpt(" + literal(arg) + ", "
+                    + literal(variables) + ", " + literal(defaultValues) + ")");
+        }
+
+        public void handleNeg(String arg, String[] variables,
+                String[] defaultValues) {
+            statements.add("handleNeg(" + literal(arg) + ", "
+                    + literal(variables) + ", " + literal(defaultValues) + ")");
+        }
+
+        public void handlePrefix(String arg, String variable,
+                String defaultValue) {
+            statements.add("handlePrefix(" + literal(arg) + ", "
+                    + literal(variable) + ", " + literal(defaultValue) + ")");
+        }
+
+        public void handleSuffix(String arg, String variable,
+                String defaultValue) {
+            statements.add("handleSuffix(" + literal(arg) + ", "
+                    + literal(variable) + ", " + literal(defaultValue) + ")");
+        }
+
+        public void handleJoin(String arg, String[] variables,
+                String[] defaultValues) {
+            statements.add("handleJoin(" + literal(arg) + ", "
+                    + literal(variables) + ", " + literal(defaultValues) + ")");
+        }
+
+        public void handleList(String arg, String variable, String defaultValue) {
+            statements.add("handleList(" + literal(arg) + ", "
+                    + literal(variable) + ", " + literal(defaultValue) + ")");
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.google.uritemplate.gregorio.apt;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import com.google.uritemplate.gregorio.URITemplate;
+
+import junit.framework.TestCase;
+
+public class TemplateProcessorTest extends TestCase {
+
+    private File dir;
+
+    private StringWriter diagnostics;
+
+    public void setUp() throws IOException {
+        dir = File.createTempFile("apt", "");
+        dir.delete();
+        dir.mkdirs();
+        diagnostics = new StringWriter();
+    }
+
+    public void testGeneratesPrecompiledTemplates() throws Exception {
+        write("com/acme/Links.java", "package com.acme;\n"
+                + "import com.google.uritemplate.gregorio.apt.Template;\n"
+                + "public class Links {\n"
+                + "    @Template static final String USER = \"http://www.foo.com{-prefix|/|id}{-opt|?|q}{-join|&|q}\";\n"
+                + "}\n");
+        assertTrue(diagnostics.toString(), compile("com/acme/Links.java"));
+        ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI()
+                .toURL() }, getClass().getClassLoader());
+        URITemplate template = (URITemplate) loader.loadClass(
+                "com.acme.LinksTemplates").getField("USER").get(null);
+        assertEquals("http://www.foo.com{-prefix|/|id}{-opt|?|q}{-join|&|q}",
+                template.toString());
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("id", "7");
+        values.put("q", "a b");
+        assertEquals("http://www.foo.com/7?q=a%20b", template.expand(values));
+    }
+
+    public void testReportsOperatorUsage() throws Exception {
+        write("com/acme/Broken.java", "package com.acme;\n"
+                + "import com.google.uritemplate.gregorio.apt.Template;\n"
+                + "public class Broken {\n"
+                + "    @Template static final String USER = \"http://www.foo.com/{-prefix|/|a,b}\";\n"
+                + "}\n");
+        assertFalse(compile("com/acme/Broken.java"));
+        assertTrue(diagnostics.toString(), diagnostics.toString().contains(
+                "allows only one variable"));
+    }
+
+    public void testChecksAnnotationUsages() throws Exception {
+        write("com/acme/Link.java", "package com.acme;\n"
+                + "import com.google.uritemplate.gregorio.apt.Template;\n"
+                + "public @interface Link {\n"
+                + "    @Template String value();\n" + "}\n");
+        write("com/acme/Resource.java", "package com.acme;\n"
+                + "@Link(\"{-suffix|/|a,b}\")\n" + "public class Resource {\n"
+                + "}\n");
+        assertFalse(compile("com/acme/Link.java", "com/acme/Resource.java"));
+        assertTrue(diagnostics.toString(), diagnostics.toString().contains(
+                "allows only one variable"));
+    }
+
+    private void write(String path, String source) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Writer out = new FileWriter(file);
+        try {
+            out.write(source);
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean compile(String... paths) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String classpath = System.getProperty("surefire.test.class.path",
+                System.getProperty("java.class.path"));
+        String[] files = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            files[i] = new File(dir, paths[i]).getPath();
+        }
+        return compiler.getTask(diagnostics, null, null,
+                Arrays.asList("-classpath", classpath, "-d", dir.getPath(),
+                        "-s", dir.getPath(), "-processor",
+                        TemplateProcessor.class.getName()), null,
+                compiler.getStandardFileManager(null, null, null)
+                        .getJavaFileObjects(files)).call();
+    }
+
+}
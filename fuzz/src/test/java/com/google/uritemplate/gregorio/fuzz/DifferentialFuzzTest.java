@@ -0,0 +1,45 @@
+package com.google.uritemplate.gregorio.fuzz;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the outcome of parsing random URI templates between the reference
+ * implementation and all other implementations. The number of templates and
+ * the seed can be set using the <code>fuzz.iterations</code> and
+ * <code>fuzz.seed</code> system properties.
+ */
+public class DifferentialFuzzTest extends TestCase {
+
+    private final static Implementation[] CANDIDATES = {
+            Implementation.COMPILED, Implementation.SCALAR,
+            Implementation.SCANNING };
+
+    public void testRandomTemplates() {
+        int iterations = Integer.getInteger("fuzz.iterations", 20000);
+        long seed = Long.getLong("fuzz.seed", 20080403L);
+        TemplateGenerator generator = new TemplateGenerator(seed);
+        for (int i = 0; i < iterations; i++) {
+            String uriTemplate = generator.next(1 + i % 12);
+            compare(uriTemplate);
+        }
+    }
+
+    public void testKnownEdgeCases() {
+        String[] uriTemplates = { "", "{}", "{,}", "{a,,}", "{=}", "{a=b=c}",
+                "{{a}}", "}{", "{-opt||}", "{-list|/|a}", "{-join|&|}",
+                "{-prefix|/|a,b}", "{-foo|&|a}", "{-opt|&}", "{a|b|c|d}",
+                "{|}" };
+        for (String uriTemplate : uriTemplates) {
+            compare(uriTemplate);
+        }
+    }
+
+    private void compare(String uriTemplate) {
+        String expected = Implementation.REFERENCE.describe(uriTemplate);
+        for (Implementation candidate : CANDIDATES) {
+            assertEquals("Template \"" + uriTemplate + "\" parsed by "
+                    + candidate, expected, candidate.describe(uriTemplate));
+        }
+    }
+
+}
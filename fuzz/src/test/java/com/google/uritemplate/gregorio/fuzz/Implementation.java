@@ -0,0 +1,236 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio.fuzz;
+
+import com.google.uritemplate.gregorio.BraceScanner;
+import com.google.uritemplate.gregorio.URITemplate;
+import com.google.uritemplate.gregorio.URITemplateHandler;
+import com.google.uritemplate.gregorio.URITemplateParser;
+import com.google.uritemplate.gregorio.URITemplateParserException;
+
+/**
+ * A URI template parser implementation, expected to behave exactly like
+ * {@link URITemplateParser#parse(String, URITemplateHandler)}.
+ *
+ * @author Wilfred Springer
+ *
+ */
+public abstract class Implementation {
+
+    /**
+     * The reference implementation: {@link URITemplateParser} itself.
+     */
+    public final static Implementation REFERENCE = new Implementation(
+            "reference") {
+        public void parse(String uriTemplate, URITemplateHandler handler) {
+            URITemplateParser.parse(uriTemplate, handler);
+        }
+    };
+
+    /**
+     * Compiles the URI template into a {@link URITemplate}, and replays the
+     * parts captured by the compiled form.
+     */
+    public final static Implementation COMPILED = new Implementation(
+            "compiled") {
+        public void parse(String uriTemplate, URITemplateHandler handler) {
+            URITemplate.compile(uriTemplate).replay(handler);
+        }
+    };
+
+    /**
+     * Locates the expansions using {@link BraceScanner#SCALAR}.
+     */
+    public final static Implementation SCALAR = new Scanning(
+            BraceScanner.SCALAR);
+
+    /**
+     * Locates the expansions using the vector scanner if it is on the class
+     * path and supported by the runtime, and {@link BraceScanner#getDefault()}
+     * otherwise.
+     */
+    public final static Implementation SCANNING = new Scanning(vectorScanner());
+
+    /** The name of the implementation. */
+    private final String name;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param name
+     *            The name of the implementation, used in reports.
+     */
+    protected Implementation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Parses the URI template passed in.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @param handler
+     *            The object receiving notifications for all parts.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public abstract void parse(String uriTemplate, URITemplateHandler handler)
+            throws URITemplateParserException;
+
+    /**
+     * Parses the URI template passed in, describing the outcome as a String:
+     * either all events reported, or the exception thrown. (Events reported
+     * before the exception are not part of the outcome, since
+     * implementations are not required to report parts of a URI template
+     * that fails to parse.)
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @return A description of the outcome.
+     */
+    public String describe(String uriTemplate) {
+        Recorder recorder = new Recorder();
+        try {
+            parse(uriTemplate, recorder);
+            return recorder.toString();
+        } catch (URITemplateParserException upe) {
+            return upe.getClass().getSimpleName() + " at "
+                    + upe.getPosition() + ": " + upe.getMessage();
+        } catch (RuntimeException re) {
+            return re.getClass().getSimpleName();
+        }
+    }
+
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Returns the vector scanner, which is not registered as a service, if it
+     * can be loaded; {@link BraceScanner#getDefault()} otherwise.
+     */
+    private static BraceScanner vectorScanner() {
+        try {
+            BraceScanner scanner = (BraceScanner) Class.forName(
+                    "com.google.uritemplate.gregorio.vector.VectorBraceScanner")
+                    .newInstance();
+            // Make sure it actually works on this platform
+            if (scanner.indexOf("{", '{', 0) == 0) {
+                return scanner;
+            }
+        } catch (Exception e) {
+            // Not on the class path
+        } catch (LinkageError le) {
+            // Not supported by the runtime
+        }
+        return BraceScanner.getDefault();
+    }
+
+    /**
+     * An {@link Implementation} locating the expansions using a
+     * {@link BraceScanner}.
+     */
+    private static class Scanning extends Implementation {
+
+        private final BraceScanner scanner;
+
+        Scanning(BraceScanner scanner) {
+            super(scanner.toString());
+            this.scanner = scanner;
+        }
+
+        public void parse(String uriTemplate, URITemplateHandler handler) {
+            URITemplateParser.parse(uriTemplate, handler, scanner);
+        }
+
+    }
+
+    /**
+     * A {@link URITemplateHandler} describing all events, one per line.
+     */
+    private static class Recorder implements URITemplateHandler {
+
+        private final StringBuilder out = new StringBuilder();
+
+        private void append(String line) {
+            out.append(line).append('\n');
+        }
+
+        public String toString() {
+            return out.toString();
+        }
+
+        public void handleCharacters(String text) {
+            append("characters " + quote(text));
+        }
+
+        public void handleVar(String variable, String defaultValue) {
+            append("var " + quote(variable) + "=" + quote(defaultValue));
+        }
+
+        public void handleOpt(String arg, String[] variables,
+                String[] defaultValues) {
+            append("opt " + quote(arg) + " " + quote(variables, defaultValues));
+        }
+
+        public void handleNeg(String arg, String[] variables,
+                String[] defaultValues) {
+            append("neg " + quote(arg) + " " + quote(variables, defaultValues));
+        }
+
+        public void handlePrefix(String arg, String variable,
+                String defaultValue) {
+            append("prefix " + quote(arg) + " " + quote(variable) + "="
+                    + quote(defaultValue));
+        }
+
+        public void handleSuffix(String arg, String variable,
+                String defaultValue) {
+            append("suffix " + quote(arg) + " " + quote(variable) + "="
+                    + quote(defaultValue));
+        }
+
+        public void handleJoin(String arg, String[] variables,
+                String[] defaultValues) {
+            append("join " + quote(arg) + " " + quote(variables, defaultValues));
+        }
+
+        public void handleList(String arg, String variable, String defaultValue) {
+            append("list " + quote(arg) + " " + quote(variable) + "="
+                    + quote(defaultValue));
+        }
+
+        private static String quote(String value) {
+            return value == null ? "null" : "'" + value + "'";
+        }
+
+        private static String quote(String[] variables, String[] defaultValues) {
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < variables.length; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(quote(variables[i])).append('=').append(
+                        quote(defaultValues[i]));
+            }
+            return builder.append(']').toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.google.uritemplate.gregorio.fuzz;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.uritemplate.gregorio.URITemplateHandler;
+
+import junit.framework.TestCase;
+
+/**
+ * Parses URI templates on an increasing number of threads, reporting the
+ * number of parses per second and the number of bytes allocated per parse
+ * for every implementation. Only runs if the <code>stress</code> system
+ * property is set to <code>true</code>; <code>stress.seconds</code> sets the
+ * duration of every run.
+ */
+public class ParserStressTest extends TestCase {
+
+    private final static Implementation[] IMPLEMENTATIONS = {
+            Implementation.REFERENCE, Implementation.COMPILED,
+            Implementation.SCALAR, Implementation.SCANNING };
+
+    public void testThroughput() throws Exception {
+        if (!Boolean.getBoolean("stress")) {
+            return;
+        }
+        long millis = Long.getLong("stress.seconds", 5) * 1000;
+        String[] uriTemplates = wellFormedTemplates(1000);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (Implementation implementation : IMPLEMENTATIONS) {
+            run(implementation, uriTemplates, 1, millis / 5, false); // Warm up
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                run(implementation, uriTemplates, threads, millis, true);
+            }
+            if (Integer.bitCount(cores) != 1) {
+                run(implementation, uriTemplates, cores, millis, true);
+            }
+        }
+    }
+
+    private void run(final Implementation implementation,
+            final String[] uriTemplates, int threads, final long millis,
+            boolean report) throws InterruptedException {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong allocated = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread() {
+                public void run() {
+                    URITemplateHandler handler = new NullHandler();
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    long bytes = allocatedBytes(bean);
+                    long deadline = System.currentTimeMillis() + millis;
+                    long count = 0;
+                    while (System.currentTimeMillis() < deadline) {
+                        for (int j = 0; j < 100; j++) {
+                            implementation.parse(uriTemplates[(int) (count++
+                                    % uriTemplates.length)], handler);
+                        }
+                    }
+                    operations.addAndGet(count);
+                    allocated.addAndGet(allocatedBytes(bean) - bytes);
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        if (!report) {
+            return;
+        }
+        System.out.println(String.format(
+                "%-10s threads: %3d  ops/sec: %,12.0f  bytes/parse: %s",
+                implementation, threads, operations.get() / seconds,
+                allocated.get() < 0 ? "n/a" : String.valueOf(allocated.get()
+                        / Math.max(1, operations.get()))));
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread, or a
+     * negative number if not supported by the JVM.
+     */
+    private static long allocatedBytes(ThreadMXBean bean) {
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * Generates random templates accepted by the reference implementation.
+     */
+    private static String[] wellFormedTemplates(int count) {
+        TemplateGenerator generator = new TemplateGenerator(count);
+        List<String> uriTemplates = new ArrayList<String>();
+        while (uriTemplates.size() < count) {
+            String uriTemplate = generator.next(12);
+            try {
+                Implementation.REFERENCE.parse(uriTemplate, new NullHandler());
+                uriTemplates.add(uriTemplate);
+            } catch (RuntimeException re) {
+                // Skip malformed templates
+            }
+        }
+        return uriTemplates.toArray(new String[count]);
+    }
+
+    /**
+     * A {@link URITemplateHandler} ignoring all events.
+     */
+    private static class NullHandler implements URITemplateHandler {
+
+        public void handleCharacters(String text) {
+        }
+
+        public void handleVar(String variable, String defaultValue) {
+        }
+
+        public void handleOpt(String arg, String[] variables,
+                String[] defaultValues) {
+        }
+
+        public void handleNeg(String arg, String[] variables,
+                String[] defaultValues) {
+        }
+
+        public void handlePrefix(String arg, String variable,
+                String defaultValue) {
+        }
+
+        public void handleSuffix(String arg, String variable,
+                String defaultValue) {
+        }
+
+        public void handleJoin(String arg, String[] variables,
+                String[] defaultValues) {
+        }
+
+        public void handleList(String arg, String variable, String defaultValue) {
+        }
+
+    }
+
+}
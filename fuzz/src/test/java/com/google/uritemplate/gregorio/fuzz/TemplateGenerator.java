@@ -0,0 +1,156 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio.fuzz;
+
+import java.util.Random;
+
+/**
+ * Generates random URI templates: mixtures of plain character data, simple
+ * expansions with and without default values, expansions using each of the
+ * operators, and malformed input such as unbalanced braces, missing or
+ * superfluous pipes, and unknown operators.
+ *
+ * @author Wilfred Springer
+ *
+ */
+public class TemplateGenerator {
+
+    /** All operators registered with the parser. */
+    private final static String[] OPERATORS = { "-opt", "-neg", "-prefix",
+            "-suffix", "-join", "-list" };
+
+    /** The characters used in plain character data and arguments. */
+    private final static String CHARACTERS = "abcxyz019/?&#:;.-_~%=,|\u00e9";
+
+    /** The characters used in variable names. */
+    private final static String NAME_CHARACTERS = "abcfoq_.- \t";
+
+    /** The source of randomness. */
+    private final Random random;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param seed
+     *            The seed, allowing to reproduce the templates generated.
+     */
+    public TemplateGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates the next URI template.
+     *
+     * @param maxParts
+     *            The maximum number of parts in the URI template.
+     * @return A URI template, which is not necessarily well-formed.
+     */
+    public String next(int maxParts) {
+        StringBuilder out = new StringBuilder();
+        int parts = random.nextInt(maxParts + 1);
+        for (int i = 0; i < parts; i++) {
+            switch (random.nextInt(8)) {
+            case 0:
+            case 1:
+            case 2:
+                text(CHARACTERS, 1 + random.nextInt(12), out);
+                break;
+            case 3:
+                out.append('{');
+                variables(1, out);
+                out.append('}');
+                break;
+            case 4:
+            case 5:
+                out.append('{').append(operator()).append('|');
+                text(CHARACTERS, random.nextInt(3), out);
+                out.append('|');
+                variables(1 + random.nextInt(3), out);
+                out.append('}');
+                break;
+            case 6:
+                malformed(out);
+                break;
+            default:
+                out.append(random.nextBoolean() ? '{' : '}');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends a malformed expansion.
+     */
+    private void malformed(StringBuilder out) {
+        out.append('{');
+        switch (random.nextInt(5)) {
+        case 0:
+            out.append(operator()).append('|');
+            variables(1, out);
+            break;
+        case 1:
+            out.append(operator()).append("|||");
+            break;
+        case 2:
+            out.append("-foo|&|");
+            variables(1, out);
+            break;
+        case 3:
+            out.append(random.nextBoolean() ? "," : "=");
+            break;
+        default:
+            variables(1 + random.nextInt(2), out);
+            out.append(random.nextBoolean() ? "" : "{");
+        }
+        out.append(random.nextBoolean() ? "}" : "");
+    }
+
+    /**
+     * Returns a randomly chosen operator.
+     */
+    private String operator() {
+        return OPERATORS[random.nextInt(OPERATORS.length)];
+    }
+
+    /**
+     * Appends a comma separated list of variable references, some of them
+     * with default values, some of them empty.
+     */
+    private void variables(int count, StringBuilder out) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            text(NAME_CHARACTERS, random.nextInt(6), out);
+            if (random.nextInt(3) == 0) {
+                out.append('=');
+                text(CHARACTERS.replace(",", "").replace("|", ""), random
+                        .nextInt(5), out);
+            }
+        }
+    }
+
+    /**
+     * Appends a random sequence of characters.
+     */
+    private void text(String characters, int length, StringBuilder out) {
+        for (int i = 0; i < length; i++) {
+            out.append(characters.charAt(random.nextInt(characters.length())));
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Locates the braces delimiting expansions in a URI template. Used by
+ * {@link URITemplateParser#parse(String, URITemplateHandler, BraceScanner)}
+ * as an alternative to matching a regular expression.
+ *
+ * <p>
+ * Faster implementations can be plugged in by listing them in a
+ * <code>META-INF/services/com.google.uritemplate.gregorio.BraceScanner</code>
+ * resource. {@link #getDefault()} picks the first one that can be loaded, and
+ * falls back to {@link #SCALAR} otherwise.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+public abstract class BraceScanner {
+
+    /**
+     * The implementation relying on {@link String#indexOf(int, int)}, which
+     * the runtime typically replaces by an intrinsic.
+     */
+    public final static BraceScanner SCALAR = new BraceScanner() {
+
+        public int indexOf(String text, char c, int from) {
+            return text.indexOf(c, from);
+        }
+
+        public String toString() {
+            return "scalar";
+        }
+
+    };
+
+    /**
+     * Returns the position of the first occurrence of the character passed
+     * in, at or after <code>from</code>.
+     *
+     * @param text
+     *            The characters to be searched.
+     * @param c
+     *            The character to look for.
+     * @param from
+     *            The position to start searching.
+     * @return The position of the character, or <code>-1</code> if it does not
+     *         occur.
+     */
+    public abstract int indexOf(String text, char c, int from);
+
+    /**
+     * Returns the first {@link BraceScanner} registered as a service that can
+     * be loaded, or {@link #SCALAR} if there is none.
+     *
+     * @return The {@link BraceScanner} to be used by default.
+     */
+    public static BraceScanner getDefault() {
+        return Default.INSTANCE;
+    }
+
+    /**
+     * Holds the default {@link BraceScanner}, looked up on first use.
+     */
+    private static class Default {
+
+        final static BraceScanner INSTANCE = load();
+
+        private static BraceScanner load() {
+            Iterator<BraceScanner> scanners = ServiceLoader.load(
+                    BraceScanner.class, BraceScanner.class.getClassLoader())
+                    .iterator();
+            while (hasNext(scanners)) {
+                try {
+                    BraceScanner scanner = scanners.next();
+                    // Make sure it actually works on this platform
+                    if (scanner.indexOf("{", '{', 0) == 0) {
+                        return scanner;
+                    }
+                } catch (ServiceConfigurationError sce) {
+                    // Not available on this platform, try the next one
+                } catch (LinkageError le) {
+                    // Not available on this platform, try the next one
+                }
+            }
+            return SCALAR;
+        }
+
+        private static boolean hasNext(Iterator<BraceScanner> scanners) {
+            try {
+                return scanners.hasNext();
+            } catch (ServiceConfigurationError sce) {
+                return false;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+/**
+ * The exception thrown when one of the {@link Limits} is exceeded. For all of
+ * the different limits, check {@link Limit}.
+ *
+ * @author Wilfred Springer
+ *
+ */
+@SuppressWarnings("serial")
+public class LimitExceededException extends URITemplateParserException {
+
+    /**
+     * The different limits that can be exceeded.
+     *
+     */
+    public enum Limit {
+        TemplateLength, Expansions, Variables, DefaultValueLength, OutputLength
+    }
+
+    /**
+     * The limit exceeded.
+     */
+    private Limit limit;
+
+    /**
+     * The maximum allowed.
+     */
+    private int maximum;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param limit
+     *            The limit exceeded.
+     * @param maximum
+     *            The maximum allowed.
+     * @param position
+     *            The position at which the limit got exceeded. (For
+     *            {@link Limit#OutputLength}, the position in the expanded URI.)
+     */
+    public LimitExceededException(Limit limit, int maximum, int position) {
+        super(getMessage(limit, maximum), position);
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Returns the message.
+     *
+     * @param limit
+     *            The limit exceeded.
+     * @param maximum
+     *            The maximum allowed.
+     * @return A human readable message stating the error condition.
+     */
+    private static String getMessage(Limit limit, int maximum) {
+        switch (limit) {
+        case TemplateLength:
+            return "URI template exceeds " + maximum + " characters.";
+        case Expansions:
+            return "URI template exceeds " + maximum + " expansions.";
+        case Variables:
+            return "Expansion exceeds " + maximum + " variables.";
+        case DefaultValueLength:
+            return "Default value exceeds " + maximum + " characters.";
+        case OutputLength:
+            return "Expanded URI exceeds " + maximum + " characters.";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the limit exceeded.
+     *
+     * @return The limit exceeded.
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the maximum allowed.
+     *
+     * @return The maximum allowed.
+     */
+    public int getMaximum() {
+        return maximum;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+/**
+ * The limits imposed on URI templates obtained from untrusted sources. The
+ * {@link URITemplateParser} stops as soon as one of the limits is exceeded, by
+ * throwing a {@link LimitExceededException}, bounding the amount of work and
+ * memory spent on a single URI template.
+ *
+ * @author Wilfred Springer
+ *
+ */
+public class Limits {
+
+    /** No limits at all. */
+    public final static Limits NONE = new Limits(Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE);
+
+    /** The maximum number of characters in the URI template. */
+    private final int maxTemplateLength;
+
+    /** The maximum number of expansions in the URI template. */
+    private final int maxExpansions;
+
+    /** The maximum number of variables in a single expansion. */
+    private final int maxVariables;
+
+    /** The maximum number of characters of a single default value. */
+    private final int maxDefaultValueLength;
+
+    /** The maximum number of characters of the expanded URI. */
+    private final int maxOutputLength;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param maxTemplateLength
+     *            The maximum number of characters in the URI template.
+     * @param maxExpansions
+     *            The maximum number of expansions in the URI template.
+     * @param maxVariables
+     *            The maximum number of variables in a single expansion.
+     * @param maxDefaultValueLength
+     *            The maximum number of characters of a single default value.
+     * @param maxOutputLength
+     *            The maximum number of characters of the expanded URI.
+     */
+    public Limits(int maxTemplateLength, int maxExpansions, int maxVariables,
+            int maxDefaultValueLength, int maxOutputLength) {
+        this.maxTemplateLength = maxTemplateLength;
+        this.maxExpansions = maxExpansions;
+        this.maxVariables = maxVariables;
+        this.maxDefaultValueLength = maxDefaultValueLength;
+        this.maxOutputLength = maxOutputLength;
+    }
+
+    /**
+     * Returns the maximum number of characters in the URI template.
+     *
+     * @return The maximum number of characters in the URI template.
+     */
+    public int getMaxTemplateLength() {
+        return maxTemplateLength;
+    }
+
+    /**
+     * Returns the maximum number of expansions in the URI template.
+     *
+     * @return The maximum number of expansions in the URI template.
+     */
+    public int getMaxExpansions() {
+        return maxExpansions;
+    }
+
+    /**
+     * Returns the maximum number of variables in a single expansion.
+     *
+     * @return The maximum number of variables in a single expansion.
+     */
+    public int getMaxVariables() {
+        return maxVariables;
+    }
+
+    /**
+     * Returns the maximum number of characters of a single default value.
+     *
+     * @return The maximum number of characters of a single default value.
+     */
+    public int getMaxDefaultValueLength() {
+        return maxDefaultValueLength;
+    }
+
+    /**
+     * Returns the maximum number of characters of the expanded URI.
+     *
+     * @return The maximum number of characters of the expanded URI.
+     */
+    public int getMaxOutputLength() {
+        return maxOutputLength;
+    }
+
+}
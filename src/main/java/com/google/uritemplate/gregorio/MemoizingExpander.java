@@ -0,0 +1,201 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Expands {@link URITemplate}s, remembering the expanded URIs. Expanding the
+ * same template with the same variable values again returns the remembered
+ * URI, instead of rendering the template once more. Only the most recently
+ * used expansions are remembered, up to a maximum number for all templates
+ * together; templates no longer used are therefore not kept around.
+ *
+ * <p>
+ * Variable values are compared using {@link Object#equals(Object)} (and
+ * element by element for arrays), so they should not be modified after they
+ * have been passed in. Expansions with {@link Iterator}, stream or other lazy
+ * {@link Iterable} values (anything but a {@link Collection}) are never
+ * remembered, since those cannot be compared without consuming them.
+ * </p>
+ *
+ * <p>
+ * Instances can be shared between threads.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+public class MemoizingExpander {
+
+    /** The expansions remembered, for all templates. */
+    private final Cache cache;
+
+    /**
+     * The templates for which expansions are not remembered. Templates are
+     * held weakly, and compared by identity.
+     */
+    private final Map<URITemplate, Boolean> excluded = Collections
+            .synchronizedMap(new WeakHashMap<URITemplate, Boolean>());
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param maxEntries
+     *            The maximum number of expansions remembered, for all
+     *            templates together.
+     */
+    public MemoizingExpander(int maxEntries) {
+        this.cache = new Cache(maxEntries);
+    }
+
+    /**
+     * Expands the URI template, using the variable values passed in.
+     *
+     * @param template
+     *            The URI template.
+     * @param values
+     *            The variable values, indexed by variable name.
+     * @return The expanded URI.
+     * @throws IllegalArgumentException
+     *             If the type of a variable value does not match the way it
+     *             is used in the template.
+     * @see URITemplate#expand(Map)
+     */
+    public String expand(URITemplate template, Map<String, ?> values) {
+        Object[] slots = template.resolve(values);
+        if (excluded.containsKey(template) || !isCacheable(slots)) {
+            return render(template, slots);
+        }
+        Key key = new Key(template, slots);
+        String result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result == null) {
+            result = render(template, slots);
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops remembering the expansions of the URI template passed in,
+     * forgetting the expansions remembered so far.
+     *
+     * @param template
+     *            The URI template.
+     */
+    public void exclude(URITemplate template) {
+        excluded.put(template, Boolean.TRUE);
+        synchronized (cache) {
+            Iterator<Key> keys = cache.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().template == template) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders the template passed in.
+     */
+    private static String render(URITemplate template, Object[] slots) {
+        StringBuilder out = new StringBuilder();
+        template.render(slots, out);
+        return out.toString();
+    }
+
+    /**
+     * Indicates if the variable values can be used as a key.
+     *
+     * @param slots
+     *            The variable values, indexed by slot.
+     * @return <code>false</code> if any of the values is an {@link Iterator}
+     *         or an {@link Iterable} other than a {@link Collection}.
+     */
+    private static boolean isCacheable(Object[] slots) {
+        for (Object value : slots) {
+            if (value instanceof Iterator<?> || value instanceof Iterable<?>
+                    && !(value instanceof Collection<?>)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The expansions remembered, evicting the least recently used one once the
+     * maximum number is exceeded.
+     */
+    @SuppressWarnings("serial")
+    private static class Cache extends LinkedHashMap<Key, String> {
+
+        private final int maxEntries;
+
+        Cache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            return size() > maxEntries;
+        }
+
+    }
+
+    /**
+     * The template and its variable values, indexed by slot, used as a key.
+     * Templates are compared by identity. The hash code is computed once.
+     */
+    private static class Key {
+
+        private final URITemplate template;
+
+        private final Object[] slots;
+
+        private final int hash;
+
+        Key(URITemplate template, Object[] slots) {
+            this.template = template;
+            this.slots = slots;
+            this.hash = 31 * System.identityHashCode(template)
+                    + Arrays.deepHashCode(slots);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash
+                    && ((Key) other).template == template
+                    && Arrays.deepEquals(((Key) other).slots, slots);
+        }
+
+    }
+
+}
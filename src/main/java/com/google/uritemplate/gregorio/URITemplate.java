@@ -0,0 +1,1519 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+
+import com.google.uritemplate.gregorio.LimitExceededException.Limit;
+
+/**
+ * A compiled URI template. Instances are obtained by {@link #compile(String)}
+ * or by feeding the events of a {@link URITemplateParser} run into a
+ * {@link URITemplateCompiler}. Once compiled, the template can be expanded any
+ * number of times without parsing it again.
+ *
+ * <p>
+ * Variable values are passed in as a {@link Map}. A value is either a single
+ * value (turned into a String using {@link Object#toString()}) or a list
+ * value. List values are {@link Iterable}s, {@link Iterator}s,
+ * {@link BaseStream}s, object arrays, <code>int[]</code> or
+ * <code>long[]</code> arrays. Their elements are written to the expanded URI
+ * one by one, without copying them into an intermediate collection first. A
+ * variable is considered to be undefined if it is not in the {@link Map}, if
+ * its value is <code>null</code>, or if it is an empty list value.
+ * </p>
+ *
+ * <p>
+ * Every {@link Iterable} counts as a list value, including objects usually
+ * thought of as single values, such as {@link java.nio.file.Path}; pass the
+ * {@link Object#toString()} of those instead.
+ * </p>
+ *
+ * <p>
+ * {@link Iterator}s and {@link BaseStream}s are consumed by the first
+ * expansion writing their elements; subsequent expansions referencing the
+ * same variable will find them empty. The same holds for {@link Iterable}s
+ * other than {@link Collection}s, which are asked for their {@link Iterator}
+ * only once per expansion. Checks such as the one performed by
+ * <code>{-opt|?|foo}</code> do not consume any elements.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+public final class URITemplate {
+
+    /** The hexadecimal digits, used for percent-encoding. */
+    private final static char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** The original URI template. */
+    private final String template;
+
+    /** The names of all variables referenced, indexed by slot. */
+    private final String[] variables;
+
+    /** The segments making up this template. */
+    private final Segment[] segments;
+
+    /** The limits imposed on this template. */
+    private final Limits limits;
+
+    /**
+     * The values bound by {@link #bind(Map)} to variables of expansions that
+     * have been retained, indexed by variable name.
+     */
+    private final Map<String, ?> presets;
+
+    /**
+     * The fingerprint, computed on first use; <code>0</code> if it has not
+     * been computed yet (or happens to be <code>0</code>).
+     */
+    private volatile long fingerprint;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param template
+     *            The original URI template.
+     * @param variables
+     *            The names of all variables referenced, indexed by slot.
+     * @param segments
+     *            The segments making up this template.
+     * @param limits
+     *            The limits imposed on this template.
+     */
+    URITemplate(String template, String[] variables, Segment[] segments,
+            Limits limits) {
+        this(template, variables, segments, limits, Collections
+                .<String, Object> emptyMap());
+    }
+
+    /**
+     * Constructs a new instance, with values bound to some of the variables
+     * already.
+     *
+     * @param template
+     *            The URI template.
+     * @param variables
+     *            The names of all variables referenced, indexed by slot.
+     * @param segments
+     *            The segments making up this template.
+     * @param limits
+     *            The limits imposed on this template.
+     * @param presets
+     *            The values bound to variables, indexed by name.
+     */
+    private URITemplate(String template, String[] variables,
+            Segment[] segments, Limits limits, Map<String, ?> presets) {
+        this.template = template;
+        this.variables = variables;
+        this.segments = segments;
+        this.limits = limits;
+        this.presets = presets;
+    }
+
+    /**
+     * Compiles the URI template passed in.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @return The compiled URI template.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static URITemplate compile(String uriTemplate)
+            throws URITemplateParserException {
+        URITemplateCompiler compiler = new URITemplateCompiler(uriTemplate);
+        URITemplateParser.parse(uriTemplate, compiler);
+        return compiler.getTemplate();
+    }
+
+    /**
+     * Compiles the URI template passed in, checking it against the
+     * {@link Limits} passed in. The {@link Limits#getMaxOutputLength() maximum
+     * output length} is enforced whenever the template is expanded.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @return The compiled URI template.
+     * @throws LimitExceededException
+     *             If the URI template exceeds one of the limits.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static URITemplate compile(String uriTemplate, Limits limits)
+            throws URITemplateParserException {
+        return compile(uriTemplate, new URITemplateParser.NoContext(), limits);
+    }
+
+    /**
+     * Compiles the URI template passed in, checking it against the
+     * {@link Context} passed in.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @param context
+     *            Contextual information on the variables referenced by the URI
+     *            Template.
+     * @return The compiled URI template.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static URITemplate compile(String uriTemplate, Context context)
+            throws URITemplateParserException {
+        return compile(uriTemplate, context, Limits.NONE);
+    }
+
+    /**
+     * Compiles the URI template passed in, checking it against the
+     * {@link Context} and the {@link Limits} passed in. The
+     * {@link Limits#getMaxOutputLength() maximum output length} is enforced
+     * whenever the template is expanded.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @param context
+     *            Contextual information on the variables referenced by the URI
+     *            Template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @return The compiled URI template.
+     * @throws LimitExceededException
+     *             If the URI template exceeds one of the limits.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static URITemplate compile(String uriTemplate, Context context,
+            Limits limits) throws URITemplateParserException {
+        URITemplateCompiler compiler = new URITemplateCompiler(uriTemplate,
+                limits);
+        URITemplateParser.parse(uriTemplate, compiler, context, limits);
+        return compiler.getTemplate();
+    }
+
+    /**
+     * Expands the URI template, using the variable values passed in.
+     *
+     * @param values
+     *            The variable values, indexed by variable name.
+     * @return The expanded URI.
+     * @throws IllegalArgumentException
+     *             If the type of a variable value does not match the way it
+     *             is used in the template.
+     * @throws LimitExceededException
+     *             If the expanded URI exceeds the maximum output length.
+     */
+    public String expand(Map<String, ?> values) {
+        StringBuilder out = new StringBuilder(template.length() * 2);
+        expand(values, out);
+        return out.toString();
+    }
+
+    /**
+     * Expands the URI template, using the variable values passed in, and
+     * appending the result to the {@link StringBuilder} passed in.
+     *
+     * @param values
+     *            The variable values, indexed by variable name.
+     * @param out
+     *            The {@link StringBuilder} receiving the expanded URI.
+     * @throws IllegalArgumentException
+     *             If the type of a variable value does not match the way it
+     *             is used in the template.
+     * @throws LimitExceededException
+     *             If the expanded URI exceeds the maximum output length.
+     */
+    public void expand(Map<String, ?> values, StringBuilder out) {
+        render(resolve(values), out);
+    }
+
+    /**
+     * Expands the URI template, using the variable values passed in, encoding
+     * the elements of large list values in parallel on the common fork-join
+     * pool.
+     *
+     * @param values
+     *            The variable values, indexed by variable name.
+     * @param threshold
+     *            The number of elements a list value needs to exceed in order
+     *            to be encoded in parallel.
+     * @return The expanded URI.
+     * @see #expandParallel(Map, int, ForkJoinPool)
+     */
+    public String expandParallel(Map<String, ?> values, int threshold) {
+        return expandParallel(values, threshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Expands the URI template, using the variable values passed in, encoding
+     * the elements of large list values in parallel. List values with more
+     * elements than the threshold are split into chunks, encoded into separate
+     * buffers on the {@link ForkJoinPool} passed in, and concatenated in
+     * order. The result is identical to the one of {@link #expand(Map)}.
+     * The chunks share the remaining output length, and all of them stop as
+     * soon as it is exceeded; list values that are bound to exceed it are not
+     * split at all.
+     *
+     * <p>
+     * Only list values supporting fast random access are split: {@link List}s
+     * implementing {@link RandomAccess}, object arrays, <code>int[]</code> and
+     * <code>long[]</code> arrays. Other list values are expanded sequentially.
+     * </p>
+     *
+     * @param values
+     *            The variable values, indexed by variable name.
+     * @param threshold
+     *            The number of elements a list value needs to exceed in order
+     *            to be encoded in parallel.
+     * @param pool
+     *            The {@link ForkJoinPool} encoding the chunks.
+     * @return The expanded URI.
+     * @throws IllegalArgumentException
+     *             If the type of a variable value does not match the way it
+     *             is used in the template.
+     * @throws LimitExceededException
+     *             If the expanded URI exceeds the maximum output length.
+     */
+    public String expandParallel(Map<String, ?> values, int threshold,
+            ForkJoinPool pool) {
+        Object[] slots = resolve(values);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = ParallelElements.wrap(slots[i], threshold, pool);
+        }
+        StringBuilder out = new StringBuilder(template.length() * 2);
+        render(slots, out);
+        return out.toString();
+    }
+
+    /**
+     * Expands the URI template asynchronously, using variable values provided
+     * by the suppliers passed in. The suppliers of all variables referenced by
+     * this template are invoked concurrently, each on a virtual thread if the
+     * runtime supports them, and on the common fork-join pool otherwise. The
+     * template is rendered once all values have been resolved.
+     *
+     * @param suppliers
+     *            The suppliers of the variable values, indexed by variable
+     *            name. A variable without a supplier is undefined.
+     * @return A {@link CompletableFuture} completing with the expanded URI, or
+     *         exceptionally if any of the suppliers fails.
+     * @see #expandAsync(Map, Executor)
+     */
+    public CompletableFuture<String> expandAsync(
+            Map<String, ? extends Supplier<? extends CompletionStage<?>>> suppliers) {
+        return expandAsync(suppliers, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Expands the URI template asynchronously, using variable values provided
+     * by the suppliers passed in. The suppliers of all variables referenced by
+     * this template are invoked concurrently on the {@link Executor} passed in.
+     * The template is rendered once all values have been resolved.
+     *
+     * @param suppliers
+     *            The suppliers of the variable values, indexed by variable
+     *            name. A variable without a supplier is undefined.
+     * @param executor
+     *            The {@link Executor} invoking the suppliers.
+     * @return A {@link CompletableFuture} completing with the expanded URI, or
+     *         exceptionally if any of the suppliers fails.
+     */
+    public CompletableFuture<String> expandAsync(
+            Map<String, ? extends Supplier<? extends CompletionStage<?>>> suppliers,
+            Executor executor) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            Supplier<? extends CompletionStage<?>> supplier = suppliers
+                    .get(variables[i]);
+            if (presets.containsKey(variables[i])) {
+                futures[i] = CompletableFuture.completedFuture(presets
+                        .get(variables[i]));
+            } else if (supplier == null) {
+                futures[i] = CompletableFuture.completedFuture(null);
+            } else {
+                futures[i] = CompletableFuture.supplyAsync(
+                        () -> supplier.get(), executor).thenCompose(
+                        stage -> stage.thenApply(value -> (Object) value));
+            }
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> {
+            Object[] values = new Object[futures.length];
+            for (int i = 0; i < futures.length; i++) {
+                values[i] = toValue(futures[i].join());
+            }
+            StringBuilder out = new StringBuilder(template.length() * 2);
+            render(values, out);
+            return out.toString();
+        });
+    }
+
+    /**
+     * Partially expands the URI template. Every expansion of which all
+     * variables are in the {@link Map} passed in is replaced by its expanded
+     * form; all other expansions are retained. (A variable mapped to
+     * <code>null</code> is bound as undefined.) Expanding the resulting
+     * template with the remaining variables produces the same result as
+     * expanding this template with all of them.
+     *
+     * <p>
+     * The values bound to variables of expansions that are retained, such as
+     * <code>page</code> in <code>{-join|&|page,q}</code>, are kept with the
+     * resulting template, and take precedence over the values passed in when
+     * it is expanded. (They should therefore not be {@link Iterator}s or
+     * streams, which can only be expanded once.) They are not part of its
+     * {@link #toString()}, but they are part of its
+     * {@link #getFingerprint() fingerprint}.
+     * </p>
+     *
+     * @param values
+     *            The values of the variables to be bound, indexed by variable
+     *            name.
+     * @return A URI template referencing only the expansions that could not
+     *         be expanded yet.
+     * @throws IllegalArgumentException
+     *             If the type of a variable value does not match the way it
+     *             is used in the template, or if the expanded form of a bound
+     *             expansion contains an opening brace preceding an expansion
+     *             that is retained, which cannot be written as a URI
+     *             template.
+     * @throws LimitExceededException
+     *             If the expanded form of the bound expansions exceeds the
+     *             maximum output length.
+     */
+    public URITemplate bind(Map<String, ?> values) {
+        boolean[] bound = new boolean[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            bound[i] = presets.containsKey(variables[i])
+                    || values.containsKey(variables[i]);
+        }
+        Object[] slots = resolve(values);
+        List<Segment> remaining = new ArrayList<Segment>(segments.length);
+        // All bound expansions together are held to the maximum output length
+        StringBuilder rendered = new StringBuilder();
+        Budget budget = new Budget(limits.getMaxOutputLength(), 0);
+        int literal = 0;
+        for (Segment segment : segments) {
+            if (segment.isBound(bound)) {
+                segment.render(slots, rendered, budget);
+                budget.check(rendered);
+            } else {
+                if (rendered.length() > literal) {
+                    remaining.add(new Literal(rendered.substring(literal)));
+                    literal = rendered.length();
+                }
+                remaining.add(segment);
+            }
+        }
+        if (rendered.length() > literal) {
+            remaining.add(new Literal(rendered.substring(literal)));
+        }
+        URITemplateWriter writer = new URITemplateWriter();
+        for (Segment segment : remaining) {
+            segment.replay(writer);
+        }
+        URITemplateCompiler compiler = new URITemplateCompiler(writer
+                .toString(), limits);
+        for (Segment segment : remaining) {
+            segment.replay(compiler);
+        }
+        Map<String, Object> kept = new HashMap<String, Object>(values);
+        kept.putAll(presets);
+        return compiler.getTemplate().withPresets(kept);
+    }
+
+    /**
+     * Returns a copy of this template, with values bound to the variables
+     * passed in that are still referenced.
+     *
+     * @param values
+     *            The values bound to variables, indexed by name.
+     * @return A copy of this template.
+     */
+    private URITemplate withPresets(Map<String, ?> values) {
+        Map<String, Object> retained = new HashMap<String, Object>();
+        for (String variable : variables) {
+            if (values.containsKey(variable)) {
+                retained.put(variable, values.get(variable));
+            }
+        }
+        return retained.isEmpty() ? this : new URITemplate(template,
+                variables, segments, limits, Collections
+                        .unmodifiableMap(retained));
+    }
+
+    /**
+     * Looks up the values of all variables referenced, indexed by slot.
+     * Values bound by {@link #bind(Map)} take precedence.
+     *
+     * @param values
+     *            The variable values, indexed by variable name.
+     * @return The variable values, indexed by slot.
+     */
+    Object[] resolve(Map<String, ?> values) {
+        Object[] slots = new Object[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            String variable = variables[i];
+            slots[i] = toValue(presets.containsKey(variable) ? presets
+                    .get(variable) : values.get(variable));
+        }
+        return slots;
+    }
+
+    /**
+     * Renders the template using the variable values passed in. Rendering
+     * stops as soon as the maximum output length is exceeded, even halfway a
+     * list value.
+     *
+     * @param values
+     *            The variable values, indexed by slot.
+     * @param out
+     *            The {@link StringBuilder} receiving the expanded URI.
+     * @throws LimitExceededException
+     *             If the expanded URI exceeds the maximum output length.
+     */
+    void render(Object[] values, StringBuilder out) {
+        Budget budget = new Budget(limits.getMaxOutputLength(), out.length());
+        for (Segment segment : segments) {
+            segment.render(values, out, budget);
+            budget.check(out);
+        }
+    }
+
+    /**
+     * Returns the names of all variables referenced by this template, in order
+     * of appearance.
+     *
+     * @return The names of all variables referenced by this template.
+     */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /**
+     * Notifies the {@link URITemplateHandler} passed in of all parts of this
+     * template, the same way the {@link URITemplateParser} would, but without
+     * parsing anything.
+     *
+     * @param handler
+     *            The object receiving notifications for all parts.
+     */
+    public void replay(URITemplateHandler handler) {
+        for (Segment segment : segments) {
+            segment.replay(handler);
+        }
+    }
+
+    /**
+     * Returns the canonical form of this template, in which cosmetic
+     * differences have been removed. Its {@link #toString()} returns the
+     * canonical URI template.
+     *
+     * @return The canonical form of this template.
+     * @see URITemplateNormalizer
+     */
+    public URITemplate normalize() {
+        URITemplateCompiler compiler = new URITemplateCompiler(
+                getCanonicalForm(), limits);
+        URITemplateNormalizer normalizer = new URITemplateNormalizer(compiler);
+        replay(normalizer);
+        normalizer.finish();
+        return compiler.getTemplate().withPresets(presets);
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of this template. Templates that only
+     * differ cosmetically have the same fingerprint. For templates produced
+     * by {@link #bind(Map)}, the values kept for retained expansions are
+     * taken into account as well.
+     *
+     * @return The fingerprint of this template.
+     * @see URITemplateNormalizer#fingerprint(String)
+     */
+    public long getFingerprint() {
+        long result = fingerprint;
+        if (result == 0) {
+            result = computeFingerprint();
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the fingerprint returned by {@link #getFingerprint()}.
+     *
+     * @return The fingerprint of this template.
+     */
+    private long computeFingerprint() {
+        if (presets.isEmpty()) {
+            return URITemplateNormalizer.hash(getCanonicalForm());
+        }
+        StringBuilder form = new StringBuilder(getCanonicalForm());
+        for (Map.Entry<String, ?> preset : new TreeMap<String, Object>(
+                presets).entrySet()) {
+            // Neither separator can occur in encoded values
+            form.append('\n').append(preset.getKey()).append('=');
+            Object value = toValue(preset.getValue());
+            if (!isDefined(value)) {
+                form.append('\n');
+            } else if (isList(value)) {
+                writeElements(value, "", ",", "", true, form, Budget.NONE);
+            } else {
+                encode(value.toString(), form, Budget.NONE);
+            }
+        }
+        return URITemplateNormalizer.hash(form.toString());
+    }
+
+    /**
+     * Returns the canonical URI template.
+     *
+     * @return The canonical URI template.
+     */
+    private String getCanonicalForm() {
+        URITemplateWriter writer = new URITemplateWriter();
+        URITemplateNormalizer normalizer = new URITemplateNormalizer(writer);
+        replay(normalizer);
+        normalizer.finish();
+        return writer.toString();
+    }
+
+    /**
+     * Returns the original URI template.
+     */
+    public String toString() {
+        return template;
+    }
+
+    /**
+     * Turns the variable value passed in into the representation used while
+     * rendering. {@link BaseStream}s and {@link Iterable}s other than
+     * {@link Collection}s are replaced by their {@link Iterator}, allowing to
+     * check for elements without consuming them, and without asking a
+     * single-use or lazily generated {@link Iterable} for its elements more
+     * than once.
+     *
+     * @param value
+     *            The variable value.
+     * @return The value to be used while rendering.
+     */
+    static Object toValue(Object value) {
+        if (value instanceof BaseStream<?, ?>) {
+            return ((BaseStream<?, ?>) value).iterator();
+        } else if (value instanceof Iterable<?>
+                && !(value instanceof Collection<?>)) {
+            return ((Iterable<?>) value).iterator();
+        }
+        return value;
+    }
+
+    /**
+     * Indicates if the value passed in counts as defined.
+     *
+     * @param value
+     *            The variable value.
+     * @return <code>false</code> if the value is <code>null</code> or an
+     *         empty list value; <code>true</code> otherwise.
+     */
+    static boolean isDefined(Object value) {
+        if (value == null) {
+            return false;
+        } else if (value instanceof Collection<?>) {
+            return !((Collection<?>) value).isEmpty();
+        } else if (value instanceof Iterator<?>) {
+            return ((Iterator<?>) value).hasNext();
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).length > 0;
+        } else if (value instanceof int[]) {
+            return ((int[]) value).length > 0;
+        } else if (value instanceof long[]) {
+            return ((long[]) value).length > 0;
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Indicates if the value passed in is a list value.
+     *
+     * @param value
+     *            The variable value.
+     * @return <code>true</code> if the value is a list value.
+     */
+    static boolean isList(Object value) {
+        return value instanceof Collection<?> || value instanceof Iterator<?>
+                || value instanceof Object[] || value instanceof int[]
+                || value instanceof long[];
+    }
+
+    /**
+     * Writes the elements of the list value passed in, encoding each of them
+     * straight into the {@link StringBuilder}. Every element is preceded by
+     * <code>before</code> and followed by <code>after</code>; elements are
+     * separated by <code>between</code>.
+     *
+     * @param value
+     *            The list value.
+     * @param before
+     *            The text preceding every element.
+     * @param between
+     *            The text separating elements.
+     * @param after
+     *            The text following every element.
+     * @param first
+     *            Indicates if nothing has been written that needs to be
+     *            separated from the first element.
+     * @param out
+     *            The {@link StringBuilder} receiving the elements.
+     * @param budget
+     *            The {@link Budget} checked after every element.
+     * @return <code>false</code> if any element was written; the value of
+     *         <code>first</code> otherwise.
+     */
+    static boolean writeElements(Object value, String before, String between,
+            String after, boolean first, StringBuilder out, Budget budget) {
+        if (value instanceof ParallelElements) {
+            return ((ParallelElements) value).write(before, between, after,
+                    first, out, budget);
+        } else if (value instanceof int[]) {
+            for (int element : (int[]) value) {
+                // Digits and '-' are unreserved; no need to encode
+                out.append(first ? "" : between).append(before)
+                        .append(element).append(after);
+                budget.check(out);
+                first = false;
+            }
+        } else if (value instanceof long[]) {
+            for (long element : (long[]) value) {
+                out.append(first ? "" : between).append(before)
+                        .append(element).append(after);
+                budget.check(out);
+                first = false;
+            }
+        } else if (value instanceof PrimitiveIterator.OfInt) {
+            PrimitiveIterator.OfInt iterator = (PrimitiveIterator.OfInt) value;
+            while (iterator.hasNext()) {
+                out.append(first ? "" : between).append(before).append(
+                        iterator.nextInt()).append(after);
+                budget.check(out);
+                first = false;
+            }
+        } else if (value instanceof PrimitiveIterator.OfLong) {
+            PrimitiveIterator.OfLong iterator = (PrimitiveIterator.OfLong) value;
+            while (iterator.hasNext()) {
+                out.append(first ? "" : between).append(before).append(
+                        iterator.nextLong()).append(after);
+                budget.check(out);
+                first = false;
+            }
+        } else {
+            Iterator<?> iterator;
+            if (value instanceof Collection<?>) {
+                iterator = ((Collection<?>) value).iterator();
+            } else if (value instanceof Object[]) {
+                iterator = Arrays.asList((Object[]) value).iterator();
+            } else {
+                iterator = (Iterator<?>) value;
+            }
+            while (iterator.hasNext()) {
+                first = writeElement(iterator.next().toString(), before,
+                        between, after, first, out, budget);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Writes a single element, the same way
+     * {@link #writeElements(Object, String, String, String, boolean, StringBuilder, Budget)}
+     * writes each element of a list value.
+     *
+     * @return <code>false</code>, to be passed as <code>first</code> to the
+     *         next invocation.
+     */
+    static boolean writeElement(String element, String before,
+            String between, String after, boolean first, StringBuilder out,
+            Budget budget) {
+        if (!first) {
+            out.append(between);
+        }
+        out.append(before);
+        encode(element, out, budget);
+        out.append(after);
+        budget.check(out);
+        return false;
+    }
+
+    /**
+     * Appends the value passed in to the {@link StringBuilder}, percent-encoding
+     * every character not in the unreserved set.
+     *
+     * @param value
+     *            The value to be appended.
+     * @param out
+     *            The {@link StringBuilder} receiving the encoded value.
+     * @param budget
+     *            The {@link Budget} checked after every character.
+     */
+    static void encode(String value, StringBuilder out, Budget budget) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            budget.check(out);
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '-' || c == '.'
+                    || c == '_' || c == '~') {
+                out.append(c);
+            } else if (c < 0x80) {
+                escape(c, out);
+            } else if (c < 0x800) {
+                escape(0xC0 | (c >> 6), out);
+                escape(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                escape(0xF0 | (cp >> 18), out);
+                escape(0x80 | ((cp >> 12) & 0x3F), out);
+                escape(0x80 | ((cp >> 6) & 0x3F), out);
+                escape(0x80 | (cp & 0x3F), out);
+            } else {
+                escape(0xE0 | (c >> 12), out);
+                escape(0x80 | ((c >> 6) & 0x3F), out);
+                escape(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    /**
+     * Appends a single percent-encoded octet.
+     *
+     * @param octet
+     *            The octet.
+     * @param out
+     *            The {@link StringBuilder} receiving the escape sequence.
+     */
+    private static void escape(int octet, StringBuilder out) {
+        out.append('%').append(HEX[(octet >> 4) & 0xF]).append(HEX[octet & 0xF]);
+    }
+
+    /**
+     * Checks that the value passed in is not a list value.
+     *
+     * @param variable
+     *            The name of the variable.
+     * @param value
+     *            The value of the variable.
+     * @param operator
+     *            The operator using the variable.
+     * @return The value as a String.
+     * @throws IllegalArgumentException
+     *             If the value is a list value.
+     */
+    static String asString(String variable, Object value, String operator) {
+        if (isList(value)) {
+            throw new IllegalArgumentException("Variable '" + variable
+                    + "' used with operator '" + operator
+                    + "' is not expected to be a list variable.");
+        }
+        return value.toString();
+    }
+
+    /**
+     * Checks that the value passed in is a list value.
+     *
+     * @param variable
+     *            The name of the variable.
+     * @param value
+     *            The value of the variable.
+     * @param operator
+     *            The operator using the variable.
+     * @throws IllegalArgumentException
+     *             If the value is not a list value.
+     */
+    static void checkList(String variable, Object value, String operator) {
+        if (!isList(value)) {
+            throw new IllegalArgumentException("Variable '" + variable
+                    + "' used with operator '" + operator
+                    + "' is expected to be a list variable.");
+        }
+    }
+
+    /**
+     * Holds the {@link Executor} resolving variable values asynchronously,
+     * created on first use.
+     */
+    private static class DefaultExecutor {
+
+        final static Executor INSTANCE = create();
+
+        /**
+         * Creates an {@link Executor} starting a virtual thread per task if
+         * the runtime supports virtual threads; returns the common fork-join
+         * pool otherwise.
+         */
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod(
+                        "newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+
+    }
+
+    /**
+     * A list value of which the elements are encoded in parallel, in chunks.
+     * Behaves as a read-only {@link List} for all other purposes.
+     */
+    static class ParallelElements extends AbstractList<Object> implements
+            RandomAccess {
+
+        /** The elements: a {@link List}, object, int or long array. */
+        private final Object elements;
+
+        /** The number of elements. */
+        private final int size;
+
+        /** The number of elements encoded by a single task. */
+        private final int chunkSize;
+
+        /** The {@link ForkJoinPool} encoding the chunks. */
+        private final ForkJoinPool pool;
+
+        private ParallelElements(Object elements, int size, ForkJoinPool pool) {
+            this.elements = elements;
+            this.size = size;
+            this.pool = pool;
+            int chunks = pool.getParallelism() * 4;
+            this.chunkSize = Math.max(1, (size + chunks - 1) / chunks);
+        }
+
+        /**
+         * Wraps the value passed in if it is a list value supporting random
+         * access, with more elements than the threshold.
+         *
+         * @return The wrapped value, or the value passed in.
+         */
+        static Object wrap(Object value, int threshold, ForkJoinPool pool) {
+            int size;
+            if (value instanceof List<?> && value instanceof RandomAccess) {
+                size = ((List<?>) value).size();
+            } else if (value instanceof Object[]) {
+                size = ((Object[]) value).length;
+            } else if (value instanceof int[]) {
+                size = ((int[]) value).length;
+            } else if (value instanceof long[]) {
+                size = ((long[]) value).length;
+            } else {
+                return value;
+            }
+            return size > threshold ? new ParallelElements(value, size, pool)
+                    : value;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Object get(int index) {
+            if (elements instanceof int[]) {
+                return ((int[]) elements)[index];
+            } else if (elements instanceof long[]) {
+                return ((long[]) elements)[index];
+            } else if (elements instanceof Object[]) {
+                return ((Object[]) elements)[index];
+            } else {
+                return ((List<?>) elements).get(index);
+            }
+        }
+
+        /**
+         * Writes all elements, the same way
+         * {@link URITemplate#writeElements(Object, String, String, String, boolean, StringBuilder, Budget)}
+         * would, encoding chunks of elements in parallel. The chunks draw from
+         * the output length remaining in the {@link Budget}; once one of them
+         * exceeds it, the others are cancelled.
+         */
+        boolean write(final String before, final String between,
+                final String after, boolean first, StringBuilder out,
+                final Budget budget) {
+            int chunks = (size + chunkSize - 1) / chunkSize;
+            // Every element takes at least 'before', 'after' and a separator
+            long minimum = (long) size * (before.length() + after.length())
+                    + (long) (first ? size - 1 : size) * between.length();
+            long remaining = (long) budget.end - out.length();
+            if (minimum > remaining) {
+                // Bound to exceed the limit; stop as soon as it does
+                return writeElements(elements, before, between, after, first,
+                        out, budget);
+            }
+            final AtomicInteger available = new AtomicInteger((int) Math.min(
+                    Integer.MAX_VALUE, remaining - (long) (first ? chunks - 1
+                            : chunks) * between.length()));
+            final StringBuilder[] buffers = new StringBuilder[chunks];
+            final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int i = 0; i < buffers.length; i++) {
+                final int chunk = i;
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    StringBuilder buffer = new StringBuilder();
+                    ChunkBudget share = new ChunkBudget(budget.max, available);
+                    share.reserve(buffer);
+                    writeRange(chunk * chunkSize, Math.min(size, (chunk + 1)
+                            * chunkSize), before, between, after, buffer,
+                            share);
+                    share.reserve(buffer);
+                    buffers[chunk] = buffer;
+                }));
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                try {
+                    ForkJoinTask.invokeAll(tasks);
+                } catch (RuntimeException re) {
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.cancel(false);
+                    }
+                    throw re;
+                }
+            }));
+            for (StringBuilder buffer : buffers) {
+                if (!first) {
+                    out.append(between);
+                }
+                out.append(buffer);
+                budget.check(out);
+                first = false;
+            }
+            return first;
+        }
+
+        /**
+         * Writes the elements from <code>from</code> (inclusive) up to
+         * <code>to</code> (exclusive).
+         */
+        private void writeRange(int from, int to, String before,
+                String between, String after, StringBuilder out, Budget budget) {
+            if (elements instanceof int[]) {
+                int[] values = (int[]) elements;
+                for (int i = from; i < to; i++) {
+                    out.append(i == from ? "" : between).append(before)
+                            .append(values[i]).append(after);
+                    budget.check(out);
+                }
+            } else if (elements instanceof long[]) {
+                long[] values = (long[]) elements;
+                for (int i = from; i < to; i++) {
+                    out.append(i == from ? "" : between).append(before)
+                            .append(values[i]).append(after);
+                    budget.check(out);
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    writeElement(get(i).toString(), before, between, after,
+                            i == from, out, budget);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The number of characters an expansion is allowed to produce. Checked
+     * while writing, so that rendering stops as soon as the maximum output
+     * length is exceeded instead of after a complete segment.
+     */
+    static class Budget {
+
+        /** The budget used when there is no maximum output length. */
+        static final Budget NONE = new Budget(Integer.MAX_VALUE, 0);
+
+        /** The maximum output length. */
+        final int max;
+
+        /** The length of the output beyond which the maximum is exceeded. */
+        final int end;
+
+        /**
+         * Constructs a new instance.
+         *
+         * @param max
+         *            The maximum output length.
+         * @param start
+         *            The length of the output before rendering started.
+         */
+        Budget(int max, int start) {
+            this.max = max;
+            this.end = max > Integer.MAX_VALUE - start ? Integer.MAX_VALUE
+                    : start + max;
+        }
+
+        /**
+         * Checks that the output has not exceeded the maximum output length.
+         *
+         * @param out
+         *            The output.
+         * @throws LimitExceededException
+         *             If the maximum output length has been exceeded.
+         */
+        void check(StringBuilder out) {
+            if (out.length() > end) {
+                throw new LimitExceededException(Limit.OutputLength, max, max);
+            }
+        }
+
+    }
+
+    /**
+     * The share of a {@link Budget} used by a single chunk of
+     * {@link ParallelElements}, writing into a buffer of its own. The output
+     * length still available to all chunks together is shared; every chunk
+     * reserves what it has written once it has written a little more, so that
+     * chunks do not contend for every element.
+     */
+    static class ChunkBudget extends Budget {
+
+        /** The number of characters written before reserving them. */
+        private final static int RESERVE = 1024;
+
+        /** The output length still available to all chunks together. */
+        private final AtomicInteger available;
+
+        /** The length of the buffer reserved so far. */
+        private int reserved;
+
+        ChunkBudget(int max, AtomicInteger available) {
+            super(max, 0);
+            this.available = available;
+        }
+
+        void check(StringBuilder out) {
+            if (out.length() - reserved >= RESERVE) {
+                reserve(out);
+            }
+        }
+
+        /**
+         * Reserves everything written to the buffer so far.
+         *
+         * @param out
+         *            The buffer.
+         * @throws LimitExceededException
+         *             If the output length available has been exceeded, by
+         *             this chunk or any other one.
+         */
+        void reserve(StringBuilder out) {
+            if (available.addAndGet(reserved - out.length()) < 0) {
+                throw new LimitExceededException(Limit.OutputLength, max, max);
+            }
+            reserved = out.length();
+        }
+
+    }
+
+    /**
+     * The building blocks of a compiled template. Each segment corresponds to
+     * either a chunk of plain character data, or a single expansion.
+     */
+    static abstract class Segment {
+
+        /** The slots of all variables referenced by this segment. */
+        final int[] slots;
+
+        Segment(int... slots) {
+            this.slots = slots;
+        }
+
+        /**
+         * Renders the segment.
+         *
+         * @param values
+         *            The variable values, indexed by slot.
+         * @param out
+         *            The {@link StringBuilder} receiving the expanded URI.
+         * @param budget
+         *            The {@link Budget} checked while writing list values and
+         *            encoded values.
+         */
+        abstract void render(Object[] values, StringBuilder out, Budget budget);
+
+        /**
+         * Notifies the {@link URITemplateHandler} passed in of this segment,
+         * the same way the {@link URITemplateParser} would.
+         *
+         * @param handler
+         *            The object receiving the notification.
+         */
+        abstract void replay(URITemplateHandler handler);
+
+        /**
+         * Indicates if all variables referenced by this segment are bound.
+         *
+         * @param bound
+         *            Indicates, for every slot, if the variable is bound.
+         * @return <code>true</code> if all variables are bound.
+         */
+        boolean isBound(boolean[] bound) {
+            for (int slot : slots) {
+                if (!bound[slot]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Plain character data, copied to the output as is.
+     */
+    static class Literal extends Segment {
+
+        /** The character data. */
+        final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            out.append(text);
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleCharacters(text);
+        }
+
+    }
+
+    /**
+     * The expansion without an operator: <code>{var=val}</code>.
+     */
+    static class Var extends Segment {
+
+        final String variable;
+
+        final int slot;
+
+        final String defaultValue;
+
+        Var(String variable, int slot, String defaultValue) {
+            super(slot);
+            this.variable = variable;
+            this.slot = slot;
+            this.defaultValue = defaultValue;
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            Object value = values[slot];
+            if (isDefined(value)) {
+                encode(asString(variable, value, null), out, budget);
+            } else if (defaultValue != null) {
+                // Default values are already percent-encoded
+                out.append(defaultValue);
+            }
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleVar(variable, defaultValue);
+        }
+
+    }
+
+    /**
+     * Base class for the '-opt' and '-neg' expansions, substituting the
+     * argument depending on whether any of the variables is defined.
+     */
+    static abstract class Conditional extends Segment {
+
+        final String arg;
+
+        final String[] variables;
+
+        final String[] defaultValues;
+
+        Conditional(String arg, String[] variables, int[] slots,
+                String[] defaultValues) {
+            super(slots);
+            this.arg = arg;
+            this.variables = variables;
+            this.defaultValues = defaultValues;
+        }
+
+        /**
+         * Indicates if any of the variables is defined.
+         *
+         * @param values
+         *            The variable values, indexed by slot.
+         * @return <code>true</code> if any of the variables is defined.
+         */
+        boolean anyDefined(Object[] values) {
+            for (int slot : slots) {
+                if (isDefined(values[slot])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * The '-opt' expansion: <code>{-opt|/|foo}</code>.
+     */
+    static class Opt extends Conditional {
+
+        Opt(String arg, String[] variables, int[] slots,
+                String[] defaultValues) {
+            super(arg, variables, slots, defaultValues);
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            if (anyDefined(values)) {
+                out.append(arg);
+            }
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleOpt(arg, variables.clone(), defaultValues.clone());
+        }
+
+    }
+
+    /**
+     * The '-neg' expansion: <code>{-neg|/|foo}</code>.
+     */
+    static class Neg extends Conditional {
+
+        Neg(String arg, String[] variables, int[] slots,
+                String[] defaultValues) {
+            super(arg, variables, slots, defaultValues);
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            if (!anyDefined(values)) {
+                out.append(arg);
+            }
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleNeg(arg, variables.clone(), defaultValues.clone());
+        }
+
+    }
+
+    /**
+     * The '-prefix' expansion: <code>{-prefix|/|foo}</code>. Every list
+     * element is preceded by the argument.
+     */
+    static class Prefix extends Segment {
+
+        final String arg;
+
+        final String variable;
+
+        final int slot;
+
+        final String defaultValue;
+
+        Prefix(String arg, String variable, int slot, String defaultValue) {
+            super(slot);
+            this.arg = arg;
+            this.variable = variable;
+            this.slot = slot;
+            this.defaultValue = defaultValue;
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            Object value = values[slot];
+            if (!isDefined(value)) {
+                if (defaultValue != null) {
+                    out.append(arg).append(defaultValue);
+                }
+            } else if (isList(value)) {
+                writeElements(value, arg, "", "", true, out, budget);
+            } else {
+                writeElement(value.toString(), arg, "", "", true, out, budget);
+            }
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handlePrefix(arg, variable, defaultValue);
+        }
+
+    }
+
+    /**
+     * The '-suffix' expansion: <code>{-suffix|/|foo}</code>. Every list
+     * element is followed by the argument.
+     */
+    static class Suffix extends Segment {
+
+        final String arg;
+
+        final String variable;
+
+        final int slot;
+
+        final String defaultValue;
+
+        Suffix(String arg, String variable, int slot, String defaultValue) {
+            super(slot);
+            this.arg = arg;
+            this.variable = variable;
+            this.slot = slot;
+            this.defaultValue = defaultValue;
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            Object value = values[slot];
+            if (!isDefined(value)) {
+                if (defaultValue != null) {
+                    out.append(defaultValue).append(arg);
+                }
+            } else if (isList(value)) {
+                writeElements(value, "", "", arg, true, out, budget);
+            } else {
+                writeElement(value.toString(), "", "", arg, true, out, budget);
+            }
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleSuffix(arg, variable, defaultValue);
+        }
+
+    }
+
+    /**
+     * The '-join' expansion: <code>{-join|&|foo,bar}</code>. Renders
+     * <code>name=value</code> pairs for every defined variable, separated by
+     * the argument. A list value renders a pair for each of its elements.
+     */
+    static class Join extends Segment {
+
+        final String arg;
+
+        final String[] variables;
+
+        final String[] defaultValues;
+
+        Join(String arg, String[] variables, int[] slots,
+                String[] defaultValues) {
+            super(slots);
+            this.arg = arg;
+            this.variables = variables;
+            this.defaultValues = defaultValues;
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            boolean first = true;
+            for (int i = 0; i < slots.length; i++) {
+                Object value = values[slots[i]];
+                String before = variables[i] + "=";
+                if (!isDefined(value)) {
+                    if (defaultValues[i] != null) {
+                        // Default values are already percent-encoded
+                        out.append(first ? "" : arg).append(before).append(
+                                defaultValues[i]);
+                        first = false;
+                    }
+                } else if (isList(value)) {
+                    first = writeElements(value, before, arg, "", first, out,
+                            budget);
+                } else {
+                    first = writeElement(value.toString(), before, arg, "",
+                            first, out, budget);
+                }
+            }
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleJoin(arg, variables.clone(), defaultValues.clone());
+        }
+
+    }
+
+    /**
+     * The '-list' expansion: <code>{-list|/|foo}</code>. Renders the list
+     * elements, separated by the argument.
+     */
+    static class ListExpansion extends Segment {
+
+        final String arg;
+
+        final String variable;
+
+        final int slot;
+
+        final String defaultValue;
+
+        ListExpansion(String arg, String variable, int slot,
+                String defaultValue) {
+            super(slot);
+            this.arg = arg;
+            this.variable = variable;
+            this.slot = slot;
+            this.defaultValue = defaultValue;
+        }
+
+        void render(Object[] values, StringBuilder out, Budget budget) {
+            Object value = values[slot];
+            if (!isDefined(value)) {
+                if (defaultValue != null) {
+                    out.append(defaultValue);
+                }
+                return;
+            }
+            checkList(variable, value, "-list");
+            writeElements(value, "", arg, "", true, out, budget);
+        }
+
+        void replay(URITemplateHandler handler) {
+            handler.handleList(arg, variable, defaultValue);
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.uritemplate.gregorio.URITemplate.Join;
+import com.google.uritemplate.gregorio.URITemplate.ListExpansion;
+import com.google.uritemplate.gregorio.URITemplate.Literal;
+import com.google.uritemplate.gregorio.URITemplate.Neg;
+import com.google.uritemplate.gregorio.URITemplate.Opt;
+import com.google.uritemplate.gregorio.URITemplate.Prefix;
+import com.google.uritemplate.gregorio.URITemplate.Segment;
+import com.google.uritemplate.gregorio.URITemplate.Suffix;
+import com.google.uritemplate.gregorio.URITemplate.Var;
+
+/**
+ * A {@link URITemplateHandler} building a {@link URITemplate} from the parts
+ * reported by the {@link URITemplateParser}. The events do not need to
+ * originate from the parser; replaying a previously recorded sequence of
+ * events produces the same {@link URITemplate} without parsing anything.
+ *
+ * @author Wilfred Springer
+ *
+ */
+public class URITemplateCompiler implements URITemplateHandler {
+
+    /** The original URI template. */
+    private final String template;
+
+    /** The segments compiled so far. */
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    /** The names of the variables referenced so far, in order of appearance. */
+    private final List<String> variables = new ArrayList<String>();
+
+    /** The slots assigned to the variables, indexed by name. */
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+    /** The limits imposed on the template. */
+    private final Limits limits;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param template
+     *            The URI template for which events will be received.
+     */
+    public URITemplateCompiler(String template) {
+        this(template, Limits.NONE);
+    }
+
+    /**
+     * Constructs a new instance, producing a {@link URITemplate} enforcing
+     * the {@link Limits#getMaxOutputLength() maximum output length} passed in.
+     *
+     * @param template
+     *            The URI template for which events will be received.
+     * @param limits
+     *            The limits imposed on the template.
+     */
+    public URITemplateCompiler(String template, Limits limits) {
+        this.template = template;
+        this.limits = limits;
+    }
+
+    /**
+     * Returns the {@link URITemplate} compiled from all events received so
+     * far.
+     *
+     * @return The compiled {@link URITemplate}.
+     */
+    public URITemplate getTemplate() {
+        return new URITemplate(template, variables
+                .toArray(new String[variables.size()]), segments
+                .toArray(new Segment[segments.size()]), limits);
+    }
+
+    public void handleCharacters(String text) {
+        segments.add(new Literal(text));
+    }
+
+    public void handleVar(String variable, String defaultValue) {
+        segments.add(new Var(variable, slot(variable), defaultValue));
+    }
+
+    public void handleOpt(String arg, String[] variables,
+            String[] defaultValues) {
+        segments.add(new Opt(arg, variables.clone(), slots(variables),
+                defaultValues.clone()));
+    }
+
+    public void handleNeg(String arg, String[] variables,
+            String[] defaultValues) {
+        segments.add(new Neg(arg, variables.clone(), slots(variables),
+                defaultValues.clone()));
+    }
+
+    public void handlePrefix(String arg, String variable, String defaultValue) {
+        segments.add(new Prefix(arg, variable, slot(variable), defaultValue));
+    }
+
+    public void handleSuffix(String arg, String variable, String defaultValue) {
+        segments.add(new Suffix(arg, variable, slot(variable), defaultValue));
+    }
+
+    public void handleJoin(String arg, String[] variables,
+            String[] defaultValues) {
+        segments.add(new Join(arg, variables.clone(), slots(variables),
+                defaultValues.clone()));
+    }
+
+    public void handleList(String arg, String variable, String defaultValue) {
+        segments.add(new ListExpansion(arg, variable, slot(variable),
+                defaultValue));
+    }
+
+    /**
+     * Returns the slot of the variable, assigning a new one if the variable
+     * has not been referenced before.
+     *
+     * @param variable
+     *            The name of the variable.
+     * @return The slot of the variable.
+     */
+    private int slot(String variable) {
+        Integer slot = slots.get(variable);
+        if (slot == null) {
+            slot = variables.size();
+            slots.put(variable, slot);
+            variables.add(variable);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slots of all variables passed in.
+     *
+     * @param variables
+     *            The names of the variables.
+     * @return The slots of the variables.
+     */
+    private int[] slots(String[] variables) {
+        int[] result = new int[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            result[i] = slot(variables[i]);
+        }
+        return result;
+    }
+
+}
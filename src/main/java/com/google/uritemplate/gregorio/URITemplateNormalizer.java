@@ -0,0 +1,206 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+import java.util.TreeSet;
+
+/**
+ * A {@link URITemplateHandler} removing cosmetic differences between URI
+ * templates, passing the parts of the canonical form on to another
+ * {@link URITemplateHandler}. URI templates that only differ cosmetically
+ * have the same canonical form, and the canonical form expands to the same
+ * URIs as the original. The differences removed are:
+ *
+ * <ul>
+ * <li>Whitespace surrounding variable names, which the
+ * {@link URITemplateParser} already strips: <code>{ foo }</code> becomes
+ * <code>{foo}</code>.</li>
+ * <li>Default values without effect: the default values of '-opt' and
+ * '-neg', and empty default values of simple expansions and '-list'.</li>
+ * <li>The order and duplicates of the variables of '-opt' and '-neg':
+ * <code>{-opt|/|b,a,b}</code> becomes <code>{-opt|/|a,b}</code>.</li>
+ * <li>'-opt' and '-neg' expansions with an empty argument, which never
+ * produce anything.</li>
+ * <li>Adjacent or empty character data, which is merged or dropped.</li>
+ * </ul>
+ *
+ * <p>
+ * Since character data is merged, the last part is only passed on once
+ * {@link #finish()} is called.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+public class URITemplateNormalizer implements URITemplateHandler {
+
+    /** The FNV-1a 64-bit offset basis. */
+    private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** The FNV-1a 64-bit prime. */
+    private final static long FNV_PRIME = 0x100000001b3L;
+
+    /** The object receiving the parts of the canonical form. */
+    private final URITemplateHandler target;
+
+    /** The character data not passed on yet. */
+    private final StringBuilder characters = new StringBuilder();
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param target
+     *            The object receiving the parts of the canonical form.
+     */
+    public URITemplateNormalizer(URITemplateHandler target) {
+        this.target = target;
+    }
+
+    /**
+     * Returns the canonical form of the URI template passed in.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @return The canonical form of the URI template.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static String normalize(String uriTemplate)
+            throws URITemplateParserException {
+        URITemplateWriter writer = new URITemplateWriter();
+        URITemplateNormalizer normalizer = new URITemplateNormalizer(writer);
+        URITemplateParser.parse(uriTemplate, normalizer);
+        normalizer.finish();
+        return writer.toString();
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the URI template passed in. URI
+     * templates with the same canonical form have the same fingerprint. The
+     * fingerprint is the FNV-1a hash of the canonical form, and does not
+     * change between runs.
+     *
+     * @param uriTemplate
+     *            The URI template.
+     * @return The fingerprint of the URI template.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static long fingerprint(String uriTemplate)
+            throws URITemplateParserException {
+        return hash(normalize(uriTemplate));
+    }
+
+    /**
+     * Returns the FNV-1a hash of the characters passed in.
+     *
+     * @param text
+     *            The characters.
+     * @return The hash.
+     */
+    static long hash(String text) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Passes on the remaining character data. To be called after the last
+     * part has been received.
+     */
+    public void finish() {
+        if (characters.length() > 0) {
+            target.handleCharacters(characters.toString());
+            characters.setLength(0);
+        }
+    }
+
+    public void handleCharacters(String text) {
+        characters.append(text);
+    }
+
+    public void handleVar(String variable, String defaultValue) {
+        finish();
+        target.handleVar(variable, nonEmpty(defaultValue));
+    }
+
+    public void handleOpt(String arg, String[] variables,
+            String[] defaultValues) {
+        if (arg.length() > 0) {
+            finish();
+            String[] names = distinct(variables);
+            target.handleOpt(arg, names, new String[names.length]);
+        }
+    }
+
+    public void handleNeg(String arg, String[] variables,
+            String[] defaultValues) {
+        if (arg.length() > 0) {
+            finish();
+            String[] names = distinct(variables);
+            target.handleNeg(arg, names, new String[names.length]);
+        }
+    }
+
+    public void handlePrefix(String arg, String variable, String defaultValue) {
+        finish();
+        target.handlePrefix(arg, variable, defaultValue);
+    }
+
+    public void handleSuffix(String arg, String variable, String defaultValue) {
+        finish();
+        target.handleSuffix(arg, variable, defaultValue);
+    }
+
+    public void handleJoin(String arg, String[] variables,
+            String[] defaultValues) {
+        finish();
+        target.handleJoin(arg, variables.clone(), defaultValues.clone());
+    }
+
+    public void handleList(String arg, String variable, String defaultValue) {
+        finish();
+        target.handleList(arg, variable, nonEmpty(defaultValue));
+    }
+
+    /**
+     * Returns <code>null</code> for empty default values, which render the
+     * same as no default value at all.
+     */
+    private static String nonEmpty(String defaultValue) {
+        return defaultValue == null || defaultValue.length() == 0 ? null
+                : defaultValue;
+    }
+
+    /**
+     * Returns the variable names, sorted and without duplicates.
+     */
+    private static String[] distinct(String[] variables) {
+        TreeSet<String> names = new TreeSet<String>();
+        for (String variable : variables) {
+            names.add(variable);
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+}
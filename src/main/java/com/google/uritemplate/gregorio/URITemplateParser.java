@@ -16,11 +16,14 @@
 
 package com.google.uritemplate.gregorio;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.google.uritemplate.gregorio.LimitExceededException.Limit;
 import com.google.uritemplate.gregorio.OperatorUsageException.Usage;
 
 /**
@@ -68,18 +71,42 @@ public class URITemplateParser {
      */
     public static void parse(String uriTemplate, URITemplateHandler handler,
             Context context) throws URITemplateParserException {
+        parse(uriTemplate, handler, context, Limits.NONE);
+    }
+
+    /**
+     * Parse the URI template passed in, calling back on the
+     * {@link URITemplateHandler} passed in for each of the individual parts of
+     * the URI template, and giving up as soon as the URI template exceeds one
+     * of the {@link Limits} passed in.
+     * 
+     * @param uriTemplate
+     *            The URI template.
+     * @param handler
+     *            The object receiving notifications for all parts.
+     * @param context
+     *            Contextual information on the variables referenced by the URI
+     *            Template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @throws LimitExceededException
+     *             If the URI template exceeds one of the limits.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static void parse(String uriTemplate, URITemplateHandler handler,
+            Context context, Limits limits) throws URITemplateParserException {
+        checkLength(uriTemplate, limits);
         int pos = 0;
-        int length = uriTemplate.length();
+        int expansions = 0;
         Matcher matcher = EXPANSION.matcher(uriTemplate);
         while (matcher.find()) {
-            if (matcher.start() > pos) {
-                handler.handleCharacters(uriTemplate.substring(pos, matcher
-                        .start()));
-            }
-            parseExpansion(matcher.group(1), handler, matcher.start(), context);
+            handleExpansion(uriTemplate, pos, matcher.start(),
+                    matcher.end() - 1, ++expansions, handler, context, limits);
             pos = matcher.end();
         }
-        if (pos < length) {
+        if (pos < uriTemplate.length()) {
             handler.handleCharacters(uriTemplate.substring(pos));
         }
     }
@@ -105,6 +132,138 @@ public class URITemplateParser {
         parse(uriTemplate, handler, new NoContext());
     }
 
+    /**
+     * Parse the URI template passed in, calling back on the
+     * {@link URITemplateHandler} passed in for each of the individual parts of
+     * the URI template. Similar as
+     * {@link #parse(String, URITemplateHandler)}, but locating the expansions
+     * using the {@link BraceScanner} passed in instead of a regular
+     * expression.
+     * 
+     * @param uriTemplate
+     *            The URI template.
+     * @param handler
+     *            The object receiving notifications for all parts.
+     * @param scanner
+     *            The {@link BraceScanner} locating the braces.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     * 
+     * @see BraceScanner#getDefault()
+     */
+    public static void parse(String uriTemplate, URITemplateHandler handler,
+            BraceScanner scanner) throws URITemplateParserException {
+        parse(uriTemplate, handler, new NoContext(), Limits.NONE, scanner);
+    }
+
+    /**
+     * Parse the URI template passed in, calling back on the
+     * {@link URITemplateHandler} passed in for each of the individual parts of
+     * the URI template. Similar as
+     * {@link #parse(String, URITemplateHandler, Context, Limits)}, but
+     * locating the expansions using the {@link BraceScanner} passed in
+     * instead of a regular expression.
+     * 
+     * @param uriTemplate
+     *            The URI template.
+     * @param handler
+     *            The object receiving notifications for all parts.
+     * @param context
+     *            Contextual information on the variables referenced by the URI
+     *            Template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @param scanner
+     *            The {@link BraceScanner} locating the braces.
+     * @throws LimitExceededException
+     *             If the URI template exceeds one of the limits.
+     * @throws URITemplateParserException
+     *             If the parser fails to correctly parse the URI template
+     *             passed in.
+     */
+    public static void parse(String uriTemplate, URITemplateHandler handler,
+            Context context, Limits limits, BraceScanner scanner)
+            throws URITemplateParserException {
+        checkLength(uriTemplate, limits);
+        int pos = 0;
+        int expansions = 0;
+        while (true) {
+            // Same as the EXPANSION pattern: the first '{' followed by a '}'
+            int start = scanner.indexOf(uriTemplate, '{', pos);
+            int end = start < 0 ? -1 : scanner.indexOf(uriTemplate, '}',
+                    start + 1);
+            if (end < 0) {
+                break;
+            }
+            handleExpansion(uriTemplate, pos, start, end, ++expansions,
+                    handler, context, limits);
+            pos = end + 1;
+        }
+        if (pos < uriTemplate.length()) {
+            handler.handleCharacters(uriTemplate.substring(pos));
+        }
+    }
+
+    /**
+     * Checks the length of the URI template passed in.
+     * 
+     * @param uriTemplate
+     *            The URI template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @throws LimitExceededException
+     *             If the URI template exceeds the maximum length.
+     */
+    private static void checkLength(String uriTemplate, Limits limits)
+            throws LimitExceededException {
+        if (uriTemplate.length() > limits.getMaxTemplateLength()) {
+            throw new LimitExceededException(Limit.TemplateLength, limits
+                    .getMaxTemplateLength(), limits.getMaxTemplateLength());
+        }
+    }
+
+    /**
+     * Handles the expansion located by either of the parse methods, and the
+     * character data preceding it.
+     * 
+     * @param uriTemplate
+     *            The URI template.
+     * @param pos
+     *            The position of the character data preceding the expansion.
+     * @param start
+     *            The position of the opening brace.
+     * @param end
+     *            The position of the closing brace.
+     * @param expansions
+     *            The number of expansions located so far, including this one.
+     * @param handler
+     *            The object receiving notifications for all parts.
+     * @param context
+     *            Contextual information on the variables referenced by the URI
+     *            Template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @throws LimitExceededException
+     *             If the URI template exceeds the maximum number of
+     *             expansions.
+     * @throws URITemplateParserException
+     *             If we fail to parse the expansion correctly.
+     */
+    private static void handleExpansion(String uriTemplate, int pos,
+            int start, int end, int expansions, URITemplateHandler handler,
+            Context context, Limits limits) throws URITemplateParserException {
+        if (expansions > limits.getMaxExpansions()) {
+            throw new LimitExceededException(Limit.Expansions, limits
+                    .getMaxExpansions(), start);
+        }
+        if (start > pos) {
+            handler.handleCharacters(uriTemplate.substring(pos, start));
+        }
+        parseExpansion(uriTemplate.substring(start + 1, end), handler, start,
+                context, limits);
+    }
+
     /**
      * Parses an expansion. (The parts between brackets, such as
      * <code>{var=val}</code>.)
@@ -118,12 +277,14 @@ public class URITemplateParser {
      * @param context
      *            Contextual information on the variables referenced by the URI
      *            Template.
+     * @param limits
+     *            The limits imposed on the URI template.
      * @throws URITemplateParserException
      *             If we fail to parse the expansion correctly.
      */
     private static void parseExpansion(String expansion,
-            URITemplateHandler handler, int start, Context context)
-            throws URITemplateParserException {
+            URITemplateHandler handler, int start, Context context,
+            Limits limits) throws URITemplateParserException {
         String op = null;
         String arg = null;
         String varline = null;
@@ -135,16 +296,22 @@ public class URITemplateParser {
         } else {
             varline = expansion;
         }
-        String[] vardefs = varline.split(",");
+        String[] vardefs = splitVariables(varline, start, limits);
         String[] variables = new String[vardefs.length];
         String[] defaultValues = new String[vardefs.length];
         for (int i = 0; i < vardefs.length; i++) {
             int pos = vardefs[i].indexOf('=');
+            if (pos >= 0 && vardefs[i].length() - pos - 1 > limits
+                    .getMaxDefaultValueLength()) {
+                throw new LimitExceededException(Limit.DefaultValueLength,
+                        limits.getMaxDefaultValueLength(), start);
+            }
+            // Whitespace surrounding variable names is insignificant
             if (pos >= 0) {
-                variables[i] = vardefs[i].substring(0, pos);
+                variables[i] = vardefs[i].substring(0, pos).trim();
                 defaultValues[i] = vardefs[i].substring(pos + 1);
             } else {
-                variables[i] = vardefs[i];
+                variables[i] = vardefs[i].trim();
             }
             if (context.definesExistence() && !context.defines(variables[i])) {
                 throw new OperatorUsageException(op, Usage.UndefinedVariable,
@@ -155,6 +322,51 @@ public class URITemplateParser {
                 context);
     }
 
+    /**
+     * Splits the variable definitions of an expansion, separated by commas.
+     * Produces the same result as <code>varline.split(",")</code>, but gives
+     * up as soon as the number of variables exceeds the limit, without
+     * splitting the remainder.
+     * 
+     * @param varline
+     *            The variable definitions.
+     * @param start
+     *            The position of the expansion in the URI template.
+     * @param limits
+     *            The limits imposed on the URI template.
+     * @return The individual variable definitions.
+     * @throws LimitExceededException
+     *             If the number of variables exceeds the limit.
+     */
+    private static String[] splitVariables(String varline, int start,
+            Limits limits) throws LimitExceededException {
+        int comma = varline.indexOf(',');
+        if (comma < 0) {
+            return new String[] { varline };
+        }
+        List<String> vardefs = new ArrayList<String>();
+        int from = 0;
+        int empty = 0; // Empty definitions not followed by a non-empty one yet
+        while (from >= 0) {
+            int to = comma < 0 ? varline.length() : comma;
+            if (to == from) {
+                empty++;
+            } else {
+                if (vardefs.size() + empty >= limits.getMaxVariables()) {
+                    throw new LimitExceededException(Limit.Variables, limits
+                            .getMaxVariables(), start);
+                }
+                for (; empty > 0; empty--) {
+                    vardefs.add("");
+                }
+                vardefs.add(varline.substring(from, to));
+            }
+            from = comma < 0 ? -1 : comma + 1;
+            comma = from < 0 ? -1 : varline.indexOf(',', from);
+        }
+        return vardefs.toArray(new String[vardefs.size()]);
+    }
+
     /**
      * Processes the expansion. At this stage, the expansion has already been
      * disected into an operation name, an argument, variable references and
@@ -381,7 +593,7 @@ public class URITemplateParser {
      * An implementation of {@link Context} that basically indicates the context
      * is unknown.
      */
-    private static class NoContext implements Context {
+    static class NoContext implements Context {
 
         public boolean definesAsList(String name) {
             return false;
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio;
+
+/**
+ * A {@link URITemplateHandler} writing the parts it is notified of back out in
+ * URI template syntax. Parsing the result produces the same sequence of
+ * events.
+ *
+ * <p>
+ * URI templates have no way to escape braces in character data. Character
+ * data containing an opening brace followed by a closing one (in the same or
+ * in subsequent parts) would be parsed as an expansion, and is therefore
+ * rejected.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+class URITemplateWriter implements URITemplateHandler {
+
+    /** The URI template written so far. */
+    private final StringBuilder out = new StringBuilder();
+
+    /** Indicates if the character data written so far has an opening brace. */
+    private boolean open;
+
+    /**
+     * Returns the URI template written so far.
+     */
+    public String toString() {
+        return out.toString();
+    }
+
+    public void handleCharacters(String text) {
+        int brace = open ? 0 : text.indexOf('{');
+        if (brace >= 0) {
+            if (text.indexOf('}', brace) >= 0) {
+                throw unescapable();
+            }
+            open = true;
+        }
+        out.append(text);
+    }
+
+    public void handleVar(String variable, String defaultValue) {
+        if (open) {
+            throw unescapable();
+        }
+        out.append('{');
+        variable(variable, defaultValue);
+        out.append('}');
+    }
+
+    public void handleOpt(String arg, String[] variables,
+            String[] defaultValues) {
+        operator("-opt", arg, variables, defaultValues);
+    }
+
+    public void handleNeg(String arg, String[] variables,
+            String[] defaultValues) {
+        operator("-neg", arg, variables, defaultValues);
+    }
+
+    public void handlePrefix(String arg, String variable, String defaultValue) {
+        operator("-prefix", arg, new String[] { variable },
+                new String[] { defaultValue });
+    }
+
+    public void handleSuffix(String arg, String variable, String defaultValue) {
+        operator("-suffix", arg, new String[] { variable },
+                new String[] { defaultValue });
+    }
+
+    public void handleJoin(String arg, String[] variables,
+            String[] defaultValues) {
+        operator("-join", arg, variables, defaultValues);
+    }
+
+    public void handleList(String arg, String variable, String defaultValue) {
+        operator("-list", arg, new String[] { variable },
+                new String[] { defaultValue });
+    }
+
+    /**
+     * Writes an operator expansion, such as <code>{-join|&|foo,bar=baz}</code>.
+     */
+    private void operator(String op, String arg, String[] variables,
+            String[] defaultValues) {
+        if (open) {
+            throw unescapable();
+        }
+        out.append('{').append(op).append('|').append(arg).append('|');
+        for (int i = 0; i < variables.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            variable(variables[i], defaultValues[i]);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Returns the exception thrown for character data that would be parsed as
+     * (part of) an expansion.
+     */
+    private IllegalArgumentException unescapable() {
+        return new IllegalArgumentException(
+                "Character data containing '{' cannot be followed by '}' in a URI template: "
+                        + out);
+    }
+
+    /**
+     * Writes a single variable reference, such as <code>foo=bar</code>.
+     */
+    private void variable(String variable, String defaultValue) {
+        out.append(variable);
+        if (defaultValue != null) {
+            out.append('=').append(defaultValue);
+        }
+    }
+
+}
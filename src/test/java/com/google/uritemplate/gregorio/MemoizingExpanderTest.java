@@ -0,0 +1,79 @@
+package com.google.uritemplate.gregorio;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class MemoizingExpanderTest extends TestCase {
+
+    private MemoizingExpander expander;
+
+    private URITemplate template;
+
+    private Map<String, Object> values;
+
+    public void setUp() {
+        expander = new MemoizingExpander(2);
+        template = URITemplate
+                .compile("http://www.foo.com/{tenant}{-opt|?|page}{-join|&|page}");
+        values = new HashMap<String, Object>();
+        values.put("tenant", "acme");
+        values.put("page", new int[] { 1, 2 });
+    }
+
+    public void testRemembersExpansions() {
+        String result = expander.expand(template, values);
+        assertEquals("http://www.foo.com/acme?page=1&page=2", result);
+        values.put("page", new int[] { 1, 2 });
+        assertSame(result, expander.expand(template, values));
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        String first = expander.expand(template, values);
+        values.put("tenant", "b");
+        expander.expand(template, values);
+        values.put("tenant", "c");
+        expander.expand(template, values);
+        values.put("tenant", "acme");
+        String again = expander.expand(template, values);
+        assertEquals(first, again);
+        assertNotSame(first, again);
+    }
+
+    public void testExclude() {
+        expander.exclude(template);
+        String result = expander.expand(template, values);
+        assertNotSame(result, expander.expand(template, values));
+    }
+
+    public void testIteratorsAreNotRemembered() {
+        values.put("page", Arrays.asList(1, 2).iterator());
+        String result = expander.expand(template, values);
+        values.put("page", Arrays.asList(1, 2).iterator());
+        String again = expander.expand(template, values);
+        assertEquals(result, again);
+        assertNotSame(result, again);
+    }
+
+    public void testLazyIterablesAreNotRemembered() {
+        Iterable<Integer> pages = () -> Arrays.asList(1, 2).iterator();
+        values.put("page", pages);
+        String result = expander.expand(template, values);
+        String again = expander.expand(template, values);
+        assertEquals("http://www.foo.com/acme?page=1&page=2", again);
+        assertEquals(result, again);
+        assertNotSame(result, again);
+    }
+
+    public void testBoundsAllTemplatesTogether() {
+        String first = expander.expand(template, values);
+        expander.expand(URITemplate.compile("/{tenant}"), values);
+        expander.expand(URITemplate.compile("/{tenant}/"), values);
+        String again = expander.expand(template, values);
+        assertEquals(first, again);
+        assertNotSame(first, again);
+    }
+
+}
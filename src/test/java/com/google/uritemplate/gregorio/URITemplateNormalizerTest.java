@@ -0,0 +1,52 @@
+package com.google.uritemplate.gregorio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class URITemplateNormalizerTest extends TestCase {
+
+    public void testWhitespace() {
+        assertEquals("http://www.foo.com/{foo}/{-join|&|a,b=c}",
+                URITemplateNormalizer
+                        .normalize("http://www.foo.com/{ foo }/{-join|&| a ,b =c}"));
+    }
+
+    public void testRedundantDefaults() {
+        assertEquals("{foo}{-opt|/|a,b}{-list|,|c}{-suffix|/|d=}",
+                URITemplateNormalizer
+                        .normalize("{foo=}{-opt|/|b=x,a}{-list|,|c=}{-suffix|/|d=}"));
+    }
+
+    public void testAdjacentCharacters() {
+        assertEquals("http://www.foo.com/{-neg|/|a}", URITemplateNormalizer
+                .normalize("http://{-opt||x}www.foo.com/{-neg||y}{-neg|/|a,a}"));
+    }
+
+    public void testFingerprint() {
+        String first = "http://www.foo.com/{ foo=}{-opt|?|q,page}";
+        String second = "http://www.foo.com/{foo}{-opt|?|page,q=1}";
+        assertEquals(URITemplateNormalizer.fingerprint(first),
+                URITemplateNormalizer.fingerprint(second));
+        assertEquals(URITemplate.compile(first).getFingerprint(), URITemplate
+                .compile(second).getFingerprint());
+        assertFalse(URITemplateNormalizer.fingerprint(first) == URITemplateNormalizer
+                .fingerprint("http://www.foo.com/{foo}{-opt|&|page,q}"));
+    }
+
+    public void testNormalizedTemplateExpandsTheSame() {
+        URITemplate template = URITemplate
+                .compile("http://www.foo.com/{ foo=}{-opt||x}{-opt|?|q=1, q}{-join|&| q }");
+        URITemplate normalized = template.normalize();
+        assertEquals("http://www.foo.com/{foo}{-opt|?|q}{-join|&|q}",
+                normalized.toString());
+        assertEquals(template.getFingerprint(), normalized.getFingerprint());
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("foo", "f");
+        values.put("q", "x y");
+        assertEquals("http://www.foo.com/f?q=x%20y", template.expand(values));
+        assertEquals(template.expand(values), normalized.expand(values));
+    }
+
+}
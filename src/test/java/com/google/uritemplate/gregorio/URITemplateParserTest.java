@@ -38,6 +38,20 @@ public class URITemplateParserTest extends TestCase {
         verify(handler);
     }
 
+    public void testWhitespaceInVariableNames() {
+        handler.handleVar("foo", " fred");
+        handler.handleJoin(eq("&"), aryEq(new String[] { "a", "b" }),
+                aryEq(new String[] { null, null }));
+        expect(context.definesExistence()).andReturn(true).anyTimes();
+        expect(context.defines("foo")).andReturn(true);
+        expect(context.defines("a")).andReturn(true);
+        expect(context.defines("b")).andReturn(true);
+        replay(handler, context);
+        URITemplateParser.parse("{ foo = fred}{-join|&| a ,b\t}", handler,
+                context);
+        verify(handler, context);
+    }
+
     public void testOptOperator() {
         handler.handleCharacters("http://www.foo.com/");
         handler.handleOpt(eq("fred@example.org"),
@@ -95,6 +109,19 @@ public class URITemplateParserTest extends TestCase {
         verify(handler);
     }
 
+    public void testScanner() {
+        handler.handleCharacters("http://www.foo.com/");
+        handler.handleVar("{foo", "fred");
+        handler.handleCharacters("/");
+        handler.handleJoin(eq("&"), aryEq(new String[] { "{a", "b" }),
+                aryEq(new String[] { null, null }));
+        handler.handleCharacters("{");
+        replay(handler);
+        URITemplateParser.parse("http://www.foo.com/{{foo=fred}/{-join|&|{a,b}{",
+                handler, BraceScanner.SCALAR);
+        verify(handler);
+    }
+
     public void testListOperatorNoListVariable() {
         handler.handleCharacters("http://www.foo.com/");
         expect(context.definesExistence()).andReturn(true);
@@ -113,4 +140,64 @@ public class URITemplateParserTest extends TestCase {
         verify(handler, context);
     }
 
+    public void testTemplateLengthLimit() {
+        replay(handler);
+        try {
+            URITemplateParser.parse("http://www.foo.com/{foo}", handler,
+                    context, new Limits(10, 10, 10, 10, 10));
+            fail("Expecting exception.");
+        } catch (LimitExceededException lee) {
+            assertEquals(LimitExceededException.Limit.TemplateLength, lee
+                    .getLimit());
+        }
+        verify(handler);
+    }
+
+    public void testExpansionsLimit() {
+        handler.handleVar("a", null);
+        replay(handler);
+        try {
+            URITemplateParser.parse("{a}{b}", handler, context, new Limits(
+                    100, 1, 10, 10, 10));
+            fail("Expecting exception.");
+        } catch (LimitExceededException lee) {
+            assertEquals(LimitExceededException.Limit.Expansions, lee
+                    .getLimit());
+            assertEquals(3, lee.getPosition());
+        }
+        verify(handler);
+    }
+
+    public void testVariablesLimit() {
+        expect(context.definesExistence()).andReturn(false).anyTimes();
+        handler.handleJoin(eq("&"), aryEq(new String[] { "a", "", "b" }),
+                aryEq(new String[] { null, null, null }));
+        replay(handler, context);
+        Limits limits = new Limits(100, 10, 3, 10, 10);
+        URITemplateParser.parse("{-join|&|a,,b,,}", handler, context, limits);
+        try {
+            URITemplateParser.parse("{-join|&|a,b,c,d}", handler, context,
+                    limits);
+            fail("Expecting exception.");
+        } catch (LimitExceededException lee) {
+            assertEquals(LimitExceededException.Limit.Variables, lee
+                    .getLimit());
+        }
+        verify(handler, context);
+    }
+
+    public void testDefaultValueLengthLimit() {
+        expect(context.definesExistence()).andReturn(false).anyTimes();
+        replay(handler, context);
+        try {
+            URITemplateParser.parse("{foo=barbaz}", handler, context,
+                    new Limits(100, 10, 10, 3, 10));
+            fail("Expecting exception.");
+        } catch (LimitExceededException lee) {
+            assertEquals(LimitExceededException.Limit.DefaultValueLength, lee
+                    .getLimit());
+        }
+        verify(handler, context);
+    }
+
 }
@@ -0,0 +1,330 @@
+package com.google.uritemplate.gregorio;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+public class URITemplateTest extends TestCase {
+
+    private Map<String, Object> values;
+
+    public void setUp() {
+        values = new HashMap<String, Object>();
+        values.put("foo", "fred");
+        values.put("bar", "a b");
+        values.put("list", Arrays.asList("x", "y/z"));
+        values.put("empty", Collections.emptyList());
+    }
+
+    public void testStandardExpansion() {
+        assertEquals("http://www.foo.com/fred/", expand(
+                "http://www.foo.com/{foo}/"));
+        assertEquals("http://www.foo.com/a%20b/", expand(
+                "http://www.foo.com/{bar}/"));
+        assertEquals("http://www.foo.com/wilma/", expand(
+                "http://www.foo.com/{baz=wilma}/"));
+        assertEquals("http://www.foo.com//", expand(
+                "http://www.foo.com/{baz}/"));
+    }
+
+    public void testEncoding() {
+        values.put("foo", "\u00e9\u20ac\ud83d\ude00-._~");
+        assertEquals("%C3%A9%E2%82%AC%F0%9F%98%80-._~", expand("{foo}"));
+    }
+
+    public void testEncodedDefaultValues() {
+        // Default values are pct-encoded already, and copied as is
+        assertEquals("a%20b", expand("{baz=a%20b}"));
+        assertEquals("/a%2Fb", expand("{-prefix|/|baz=a%2Fb}"));
+        assertEquals("a%2Fb/", expand("{-suffix|/|baz=a%2Fb}"));
+        assertEquals("foo=fred&baz=a%26b", expand("{-join|&|foo,baz=a%26b}"));
+        assertEquals("a%2Cb", expand("{-list|,|baz=a%2Cb}"));
+    }
+
+    public void testOptOperator() {
+        assertEquals("/", expand("{-opt|/|foo}"));
+        assertEquals("", expand("{-opt|/|baz,empty}"));
+    }
+
+    public void testNegOperator() {
+        assertEquals("", expand("{-neg|/|foo}"));
+        assertEquals("/", expand("{-neg|/|baz,empty}"));
+    }
+
+    public void testPrefixOperator() {
+        assertEquals("/fred", expand("{-prefix|/|foo}"));
+        assertEquals("/x/y%2Fz", expand("{-prefix|/|list}"));
+        assertEquals("", expand("{-prefix|/|baz}"));
+    }
+
+    public void testSuffixOperator() {
+        assertEquals("fred/", expand("{-suffix|/|foo}"));
+        assertEquals("x/y%2Fz/", expand("{-suffix|/|list}"));
+    }
+
+    public void testJoinOperator() {
+        assertEquals("foo=fred&bar=a%20b&baz=wilma", expand(
+                "{-join|&|foo,bar,baz=wilma,qux}"));
+        assertEquals("list=x&list=y%2Fz", expand("{-join|&|list}"));
+    }
+
+    public void testListOperator() {
+        assertEquals("x/y%2Fz", expand("{-list|/|list}"));
+        assertEquals("", expand("{-list|/|empty}"));
+        try {
+            expand("{-list|/|foo}");
+            fail("Expecting exception.");
+        } catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+
+    public void testLazyListValues() {
+        values.put("ints", new int[] { 1, -2 });
+        values.put("longs", LongStream.of(3L, 4L));
+        values.put("strings", Stream.of("x", "y z"));
+        values.put("iterator", Arrays.asList("u", "v").iterator());
+        values.put("none", IntStream.empty());
+        assertEquals("1/-2", expand("{-list|/|ints}"));
+        assertEquals("?longs=3&longs=4", expand(
+                "{-opt|?|longs}{-join|&|longs}"));
+        assertEquals("x,y%20z", expand("{-list|,|strings}"));
+        assertEquals(".u.v", expand("{-prefix|.|iterator}"));
+        assertEquals("!", expand("{-neg|!|none}{-list|,|none}"));
+    }
+
+    public void testIterableValues() {
+        Iterable<String> once = Stream.of("a", "b c")::iterator;
+        values.put("once", once);
+        assertEquals("?once=a&once=b%20c", expand(
+                "{-opt|?|once}{-join|&|once}"));
+        values.put("path", Paths.get("x", "y"));
+        assertEquals("x/y", expand("{-list|/|path}"));
+        try {
+            expand("{path}");
+            fail("Expecting exception.");
+        } catch (IllegalArgumentException iae) {
+            // Expected; a Path is Iterable, so it is a list value
+        }
+    }
+
+    public void testVariables() {
+        URITemplate template = URITemplate
+                .compile("{foo}/{-join|&|bar,foo}/{-list|/|list}");
+        assertEquals(Arrays.asList("foo", "bar", "list"), Arrays
+                .asList(template.getVariables()));
+    }
+
+    public void testBind() {
+        URITemplate template = URITemplate
+                .compile("http://{host}{-prefix|/|version}{-opt|?|q,page}{-join|&|q,page}");
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("host", "www.foo.com");
+        config.put("version", "v1");
+        config.put("page", null);
+        URITemplate bound = template.bind(config);
+        assertEquals("http://www.foo.com/v1{-opt|?|q,page}{-join|&|q,page}",
+                bound.toString());
+        assertEquals(Arrays.asList("q", "page"), Arrays.asList(bound
+                .getVariables()));
+        values.putAll(config);
+        values.put("q", "a b");
+        assertEquals(template.expand(values), bound.expand(values));
+        assertEquals("http://www.foo.com/v1?q=a%20b", bound.expand(values));
+    }
+
+    public void testBindRetainedExpansions() {
+        URITemplate template = URITemplate
+                .compile("/{host}?{-opt|p|page,q}{-join|&|page,q}");
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("host", "h");
+        config.put("page", "1");
+        URITemplate bound = template.bind(config);
+        assertEquals("/h?{-opt|p|page,q}{-join|&|page,q}", bound.toString());
+        Map<String, Object> request = Collections.<String, Object> singletonMap(
+                "q", "x");
+        assertEquals("/h?ppage=1&q=x", bound.expand(request));
+        assertEquals("/h?ppage=1", bound.expand(Collections
+                .<String, Object> emptyMap()));
+        assertEquals(bound.expand(request), bound.normalize().expand(request));
+        config.put("page", "2");
+        assertFalse(bound.getFingerprint() == template.bind(config)
+                .getFingerprint());
+        assertEquals("/h?ppage=1&q=x", bound.bind(request).toString());
+    }
+
+    public void testBindOutputLengthLimit() {
+        URITemplate template = URITemplate.compile("{-list|,|l}{x}",
+                new Limits(100, 10, 10, 10, 5));
+        assertEquals("a,b{x}", template.bind(
+                Collections.singletonMap("l", Arrays.asList("a", "b")))
+                .toString());
+        try {
+            template.bind(Collections.singletonMap("l", new int[1000000]));
+            fail("Expecting exception.");
+        } catch (LimitExceededException lee) {
+            assertEquals(LimitExceededException.Limit.OutputLength, lee
+                    .getLimit());
+        }
+    }
+
+    public void testBindOpeningBrace() {
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("x", "1");
+        assertEquals("{y}{", URITemplate.compile("{y}{-opt|{|x}").bind(config)
+                .toString());
+        try {
+            URITemplate.compile("{-opt|{|x}{y}").bind(config);
+            fail("Expecting exception.");
+        } catch (IllegalArgumentException iae) {
+            // Expected; would be parsed as variable '{y'
+        }
+    }
+
+    public void testOutputLengthLimit() {
+        String uriTemplate = "http://{foo}/{-list|/|list}";
+        assertEquals("http://fred/x/y%2Fz", URITemplate.compile(uriTemplate,
+                new Limits(100, 10, 10, 10, 19)).expand(values));
+        try {
+            URITemplate.compile(uriTemplate,
+                    new Limits(100, 10, 10, 10, 18)).expand(values);
+            fail("Expecting exception.");
+        } catch (LimitExceededException lee) {
+            assertEquals(LimitExceededException.Limit.OutputLength, lee
+                    .getLimit());
+        }
+    }
+
+    public void testOutputLengthLimitWithinSegment() {
+        values.put("ints", new int[5000000]);
+        values.put("long", new String(new char[1000000]).replace('\0', '/'));
+        for (String uriTemplate : new String[] { "{-list|,|ints}",
+                "{-join|&|ints}", "{-list|,|range}", "{-prefix|/|range}",
+                "{long}" }) {
+            values.put("range", IntStream.range(0, Integer.MAX_VALUE));
+            StringBuilder out = new StringBuilder();
+            try {
+                URITemplate.compile(uriTemplate,
+                        new Limits(100, 10, 10, 10, 10)).expand(values, out);
+                fail("Expecting exception.");
+            } catch (LimitExceededException lee) {
+                assertEquals(LimitExceededException.Limit.OutputLength, lee
+                        .getLimit());
+                // Stopped within a few characters of the limit
+                assertTrue(out.length() < 30);
+            }
+        }
+    }
+
+    public void testExpandAsync() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        Map<String, Supplier<CompletionStage<?>>> suppliers = new HashMap<String, Supplier<CompletionStage<?>>>();
+        suppliers.put("tenant", () -> {
+            latch.countDown();
+            return CompletableFuture.completedFuture("acme");
+        });
+        suppliers.put("token", () -> {
+            latch.countDown();
+            try {
+                // Only completes if both suppliers run concurrently
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Suppliers not concurrent");
+                }
+            } catch (InterruptedException ie) {
+                throw new IllegalStateException(ie);
+            }
+            return CompletableFuture.completedFuture(Arrays.asList("a", "b"));
+        });
+        URITemplate template = URITemplate
+                .compile("http://www.foo.com/{tenant}{-opt|?|token}{-join|&|token,page}");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertEquals("http://www.foo.com/acme?token=a&token=b", template
+                    .expandAsync(suppliers, executor).get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testExpandParallel() {
+        int[] ints = new int[10000];
+        String[] strings = new String[10000];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = i - 5000;
+            strings[i] = "s " + i;
+        }
+        values.put("ints", ints);
+        values.put("strings", strings);
+        values.put("list", Arrays.asList((Object[]) strings));
+        values.put("small", Arrays.asList("x", "y"));
+        URITemplate template = URITemplate
+                .compile("/{-list|/|ints}?{-join|&|strings,foo}{-prefix|;|list}{-list|,|small}{-suffix|/|empty}");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            assertEquals(template.expand(values), template.expandParallel(
+                    values, 100, pool));
+            assertEquals(template.expand(values), template.expandParallel(
+                    values, 0, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(template.expand(values), template.expandParallel(values,
+                1000));
+    }
+
+    public void testExpandParallelOutputLengthLimit() {
+        String[] strings = new String[10000];
+        Arrays.fill(strings, "abc");
+        values.put("strings", strings);
+        values.put("ints", new int[5000000]);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            // Split, with every chunk drawing from the remaining length
+            String uriTemplate = "/{-prefix||strings}";
+            assertEquals(30001, URITemplate.compile(uriTemplate,
+                    new Limits(100, 10, 10, 10, 30001)).expandParallel(values,
+                    100, pool).length());
+            try {
+                URITemplate.compile(uriTemplate,
+                        new Limits(100, 10, 10, 10, 30000)).expandParallel(
+                        values, 100, pool);
+                fail("Expecting exception.");
+            } catch (LimitExceededException lee) {
+                assertEquals(LimitExceededException.Limit.OutputLength, lee
+                        .getLimit());
+            }
+            // Not split, since bound to exceed the limit
+            try {
+                URITemplate.compile("{-list|,|ints}",
+                        new Limits(100, 10, 10, 10, 10)).expandParallel(
+                        values, 100, pool);
+                fail("Expecting exception.");
+            } catch (LimitExceededException lee) {
+                assertEquals(LimitExceededException.Limit.OutputLength, lee
+                        .getLimit());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private String expand(String uriTemplate) {
+        return URITemplate.compile(uriTemplate).expand(values);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2008 Wilfred Springer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.uritemplate.gregorio.vector;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import com.google.uritemplate.gregorio.BraceScanner;
+
+/**
+ * A {@link BraceScanner} comparing as many characters at once as the
+ * preferred vector shape of the platform allows (typically 16 or 32), using
+ * the incubating Vector API. Since vectors cannot be loaded from a
+ * {@link String} directly, the characters are copied in blocks into a small
+ * buffer first. Only the tail that does not fill a complete vector is
+ * compared one character at a time.
+ *
+ * <p>
+ * Because of that copy, and since {@link BraceScanner#SCALAR} relies on an
+ * intrinsic that is vectorized already, this scanner turns out to be slower
+ * than {@link BraceScanner#SCALAR} on both short and long templates. It is
+ * therefore not registered as a service, and only used when passed in
+ * explicitly.
+ * </p>
+ *
+ * @author Wilfred Springer
+ *
+ */
+public class VectorBraceScanner extends BraceScanner {
+
+    /** The vector shape used. */
+    private final static VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    /** The number of characters copied at once: a multiple of the shape. */
+    private final static int BLOCK = SPECIES.length() * 16;
+
+    public int indexOf(String text, char c, int from) {
+        int length = text.length();
+        int i = from;
+        if (length - i >= BLOCK) {
+            char[] block = new char[BLOCK];
+            for (; length - i >= BLOCK; i += BLOCK) {
+                text.getChars(i, i + BLOCK, block, 0);
+                for (int j = 0; j < BLOCK; j += SPECIES.length()) {
+                    VectorMask<Short> matches = ShortVector.fromCharArray(
+                            SPECIES, block, j).eq((short) c);
+                    if (matches.anyTrue()) {
+                        return i + j + matches.firstTrue();
+                    }
+                }
+            }
+        }
+        for (; i < length; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String toString() {
+        return "vector" + SPECIES.length();
+    }
+
+}
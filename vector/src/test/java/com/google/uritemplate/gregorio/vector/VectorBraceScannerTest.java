@@ -0,0 +1,33 @@
+package com.google.uritemplate.gregorio.vector;
+
+import java.util.Random;
+
+import com.google.uritemplate.gregorio.BraceScanner;
+
+import junit.framework.TestCase;
+
+public class VectorBraceScannerTest extends TestCase {
+
+    public void testMatchesScalarScanner() {
+        BraceScanner scanner = new VectorBraceScanner();
+        Random random = new Random(42);
+        for (int n = 0; n < 2000; n++) {
+            char[] chars = new char[random.nextInt(2000)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = random.nextInt(500) == 0 ? '{' : (char) ('a' + random
+                        .nextInt(26));
+            }
+            String text = new String(chars);
+            for (int from = 0; from <= chars.length; from += 1 + random
+                    .nextInt(10)) {
+                assertEquals(BraceScanner.SCALAR.indexOf(text, '{', from),
+                        scanner.indexOf(text, '{', from));
+            }
+        }
+    }
+
+    public void testIsNotDefault() {
+        assertSame(BraceScanner.SCALAR, BraceScanner.getDefault());
+    }
+
+}